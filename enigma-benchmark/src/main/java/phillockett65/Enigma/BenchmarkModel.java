@@ -0,0 +1,57 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BenchmarkModel is a Model that keeps its settings in a temporary file so
+ * that the benchmarks never read or overwrite the user's Settings.dat.
+ */
+package phillockett65.Enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BenchmarkModel extends Model {
+
+    private final File settingsFile;
+
+    /**
+     * Constructor.
+     */
+    public BenchmarkModel() throws IOException {
+        settingsFile = File.createTempFile("Settings", ".dat");
+        settingsFile.deleteOnExit();
+    }
+
+    @Override
+    public String getSettingsFile() {
+        return settingsFile.getPath();
+    }
+
+    /**
+     * Close the key journal and remove the temporary settings and journal 
+     * files.
+     */
+    public void delete() {
+        closeJournal();
+        settingsFile.delete();
+        new File(getJournalFile()).delete();
+    }
+
+}
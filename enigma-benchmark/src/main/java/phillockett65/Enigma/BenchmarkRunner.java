@@ -0,0 +1,58 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BenchmarkRunner is the entry point of the benchmarks jar. It runs the JMH
+ * benchmarks with any standard JMH command line options, always adding the
+ * GC profiler so that the allocation rate is published alongside the
+ * throughput, and writes the results as JSON for tracking regressions.
+ */
+package phillockett65.Enigma;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+    private final static String RESULTS = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions command = new CommandLineOptions(args);
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(command);
+        builder.addProfiler(GCProfiler.class);
+
+        if (!command.getResult().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+            builder.result(RESULTS);
+        }
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+
+}
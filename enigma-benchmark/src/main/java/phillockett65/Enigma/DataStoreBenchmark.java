@@ -0,0 +1,78 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataStoreBenchmark measures saving and restoring the settings of a Model
+ * to and from disc. The Model keeps its settings in a temporary file.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataStoreBenchmark {
+
+    private BenchmarkModel model;
+
+    @Setup
+    public void setup() throws IOException {
+        model = new BenchmarkModel();
+        model.initialize();
+        final String[] plugs = { "AB", "CD", "EF", "GH", "IJ", "KL", "MN", "OP", "QR", "ST" };
+        for (int i = 0; i < plugs.length; ++i)
+            model.setPlugText(i, plugs[i]);
+
+        DataStore.writeData(model);
+    }
+
+    @TearDown
+    public void tearDown() {
+        model.delete();
+    }
+
+    @Benchmark
+    public boolean writeData() {
+        return DataStore.writeData(model);
+    }
+
+    @Benchmark
+    public boolean readData() {
+        return DataStore.readData(model);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MapperBenchmark measures the single letter mapping of a Mapper (as used
+ * for the plugboard and reflector), a Rotor and changing the ring setting of
+ * a rotor in a machine. Each operation is one letter.
+ */
+package phillockett65.Enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmark {
+
+    private Mapper reflector;
+    private Rotor rotor;
+    private EnigmaMachine machine;
+    private int index;
+
+    @Setup
+    public void setup() {
+        RotorRegistry registry = new RotorRegistry();
+        reflector = new Mapper("Reflector B", registry.getReflector("Reflector B").getMap());
+
+        rotor = registry.getRotor("III");
+
+        machine = new EnigmaMachine();
+        machine.setRotor(EnigmaMachine.RIGHT, rotor);
+    }
+
+    /**
+     * @return the next letter index, so the input is not a constant.
+     */
+    private int next() {
+        if (++index == 26)
+            index = 0;
+
+        return index;
+    }
+
+    @Benchmark
+    public int mapperSwap() {
+        return reflector.swap(Mapper.RIGHT_TO_LEFT, next());
+    }
+
+    @Benchmark
+    public int rotorSwapRightToLeft() {
+        return rotor.swap(Mapper.RIGHT_TO_LEFT, 5, 11, next());
+    }
+
+    @Benchmark
+    public int rotorSwapLeftToRight() {
+        return rotor.swap(Mapper.LEFT_TO_RIGHT, 5, 11, next());
+    }
+
+    @Benchmark
+    public EnigmaMachine setRingSetting() {
+        machine.setRingSetting(EnigmaMachine.RIGHT, next());
+        return machine;
+    }
+
+}
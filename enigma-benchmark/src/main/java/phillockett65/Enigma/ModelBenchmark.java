@@ -0,0 +1,133 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ModelBenchmark measures translation through the Model, one key press at
+ * a time with show both on and off, and the encipherment of a full message
+ * a key press at a time through the Model and in bulk through the machine.
+ * Every benchmark reports letters per second.
+ *
+ * With show on, the steps are traced to a discarding stream so that the
+ * cost of tracing, including rendering them, is measured without the cost
+ * of the console.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    private final static int MESSAGE_LENGTH = 1000;
+
+    @Param({ "false", "true" })
+    public boolean show;
+
+    private BenchmarkModel model;
+    private StepTrace trace;
+    private int index;
+
+    private final char[] message = new char[MESSAGE_LENGTH];
+    private final char[] output = new char[MESSAGE_LENGTH];
+
+    @Setup
+    public void setup() throws IOException {
+        model = new BenchmarkModel();
+        model.initialize();
+        model.defaultSettings();
+
+        model.setWheelChoice(1, "II");
+        model.setWheelChoice(2, "V");
+        model.setWheelChoice(3, "III");
+        model.setRingIndex(3, 10);
+        model.setPlugText(0, "AQ");
+        model.setPlugText(1, "BW");
+        model.setPlugText(2, "CE");
+        model.setShow(show);
+        model.setEncipher(true);
+
+        trace = StepTrace.text(OutputStream.nullOutputStream());
+        model.getMachine().setTrace(trace);
+
+        for (int i = 0; i < MESSAGE_LENGTH; ++i)
+            message[i] = (char)Mapper.indexToChar((i * 7) % 26);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        trace.close();
+        model.delete();
+    }
+
+    /**
+     * @return the next letter index, so the input is not a constant.
+     */
+    private int next() {
+        if (++index == 26)
+            index = 0;
+
+        return index;
+    }
+
+    @Benchmark
+    public int translate() {
+        return model.translate(next());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_LENGTH)
+    public int messageByKeyPress() {
+        int sum = 0;
+        for (int i = 0; i < MESSAGE_LENGTH; ++i)
+            sum += model.translate(message[i] - 'A');
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_LENGTH)
+    public char[] messageInBulk() {
+        model.translate(message, 0, MESSAGE_LENGTH, output);
+
+        return output;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ServerLoadTest is a load test harness for the EnigmaServer. It creates
+ * thousands of sessions, spread over a few different keys, then a number of
+ * client threads repeatedly post a message to a random session for a fixed
+ * time. It reports the requests per second and the latency percentiles of
+ * the translate requests. Unless a URL is given, the server is started in
+ * this JVM on a free port.
+ *
+ *     java -cp enigma-benchmark/target/benchmarks.jar phillockett65.Enigma.ServerLoadTest
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ServerLoadTest {
+
+    private static final String[] KEYS = {
+        "wheels=I,II,III&rings=AAA&offsets=AAA&reflector=Reflector+B&plugs=AB+CD",
+        "wheels=II,V,III&rings=AAK&offsets=KDO&reflector=Reflector+B&plugs=AQ+BW+CE",
+        "wheels=IV,I,V&rings=BCD&offsets=XYZ&reflector=Reflector+C",
+        "wheels=Beta,II,IV,I&rings=AAAV&offsets=ABCD&reflector=Reflector+B+Thin&plugs=AT+BL+DF",
+        "wheels=III,II,I&rings=ZZZ&offsets=QEV&reflector=Reflector+B&plugs=EJ+OY+IV+AQ",
+        "wheels=V,IV,III&rings=MMM&offsets=ENI&reflector=Reflector+C&plugs=KL+MN",
+        "wheels=I,V,II&rings=HJK&offsets=GMA&reflector=Reflector+B",
+        "wheels=VIII,VI,VII&rings=ABC&offsets=DEF&reflector=Reflector+B&plugs=PO+ML+IU",
+    };
+
+    private int sessionCount = 2000;
+    private int clients = 64;
+    private int seconds = 10;
+    private int length = 200;
+    private String url = null;
+
+    private HttpClient client;
+    private String base;
+    private String[] sessions;
+    private byte[] message;
+
+    private final AtomicLong errors = new AtomicLong();
+
+
+    /************************************************************************
+     * Support code for requests.
+     */
+
+    private HttpResponse<String> post(String path, byte[] body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void createSessions() throws IOException, InterruptedException {
+        sessions = new String[sessionCount];
+        for (int i = 0; i < sessionCount; ++i) {
+            HttpResponse<String> response = post("", KEYS[i % KEYS.length].getBytes());
+            if (response.statusCode() != 201)
+                throw new IOException("Create failed: " + response.statusCode() + " " + response.body());
+
+            sessions[i] = response.body();
+        }
+    }
+
+    /**
+     * Post messages to random sessions until the deadline.
+     * @param deadline System.nanoTime() at which to stop.
+     * @return the latency of each request in nanoseconds.
+     */
+    private long[] run(long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            final String session = sessions[random.nextInt(sessions.length)];
+            final long start = System.nanoTime();
+            try {
+                if (post("/" + session + "/translate", message).statusCode() != 200)
+                    errors.incrementAndGet();
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = System.nanoTime() - start;
+        }
+
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+
+        return sorted[Math.min(sorted.length - 1, (int)(sorted.length * p))];
+    }
+
+
+    /************************************************************************
+     * Support code for the load test.
+     */
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+
+            switch (args[i]) {
+            case "--sessions":  sessionCount = Integer.parseInt(args[++i]); break;
+            case "--clients":   clients = Integer.parseInt(args[++i]); break;
+            case "--seconds":   seconds = Integer.parseInt(args[++i]); break;
+            case "--length":    length = Integer.parseInt(args[++i]); break;
+            case "--url":       url = args[++i]; break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void test() throws Exception {
+        EnigmaServer server = null;
+        if (url == null) {
+            SessionRegistry registry = new SessionRegistry(new MachineCache(new RotorRegistry()));
+            server = new EnigmaServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), registry);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+
+        base = url + "/sessions";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        message = new byte[length];
+        for (int i = 0; i < length; ++i)
+            message[i] = (byte)Mapper.indexToChar((i * 7) % 26);
+
+        long start = System.nanoTime();
+        createSessions();
+        System.out.println("Created " + sessionCount + " sessions in " + millis(System.nanoTime() - start));
+
+        final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<Thread>(clients);
+        long[][] results = new long[clients][];
+        start = System.nanoTime();
+        for (int i = 0; i < clients; ++i) {
+            final int index = i;
+            Thread thread = new Thread(() -> results[index] = run(deadline), "ServerLoadTest-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        final long elapsed = System.nanoTime() - start;
+
+        final long[] latencies = Arrays.stream(results).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.println(latencies.length + " requests of " + length + " letters from " + clients +
+            " clients in " + millis(elapsed) + ", " + errors.get() + " errors");
+        System.out.println(String.format("Requests/sec: %.0f", latencies.length * 1e9 / elapsed));
+        System.out.println("Latency p50: " + millis(percentile(latencies, 0.50)) +
+            "  p99: " + millis(percentile(latencies, 0.99)) +
+            "  p99.9: " + millis(percentile(latencies, 0.999)) +
+            "  max: " + millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+
+        if (server != null) {
+            System.out.println("Sessions: " + server.getRegistry().getSize() + ", " + server.getRegistry().getCache());
+            server.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        EnigmaServer.enableNoDelay();
+
+        ServerLoadTest test = new ServerLoadTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ServerLoadTest [--sessions <n>] [--clients <n>] [--seconds <n>] [--length <n>] [--url <url>]");
+            System.exit(1);
+        }
+
+        test.test();
+    }
+
+}
@@ -0,0 +1,259 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TeleprinterLoadTest is a load test harness for the TeleprinterServer. It
+ * starts the server in this JVM on a free loopback port, opens thousands of
+ * connections from a single client thread using a Selector, and on every
+ * connection repeatedly sends a message and waits for its translation for a
+ * fixed time. Every reply is checked against a local machine with the same
+ * settings. It reports the messages and letters per second and the latency
+ * percentiles of the round trips. With --chain a second server is started
+ * that forwards to the first, so each letter is enciphered by one server
+ * and deciphered by the other on the way there and back.
+ *
+ *     java -cp enigma-benchmark/target/benchmarks.jar phillockett65.Enigma.TeleprinterLoadTest
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class TeleprinterLoadTest {
+
+    private int connectionCount = 2000;
+    private int seconds = 10;
+    private int length = 200;
+    private boolean chain = false;
+
+    private final MachineCache cache = new MachineCache(new RotorRegistry());
+    private final MachineSettings settings = new MachineSettings();
+
+    private byte[] message;
+    private long[] latencies = new long[1024];
+    private int count = 0;
+    private long errors = 0;
+
+
+    /************************************************************************
+     * Support code for the "Connection" class.
+     */
+
+    /**
+     * Connection is the client end of one connection, with the machine that 
+     * predicts the replies.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final EnigmaMachine machine;
+        private final ByteBuffer output;
+        private final ByteBuffer input;
+        private final byte[] expected;
+        private final byte[] actual;
+        private long sent;
+
+        public Connection(SocketChannel channel) {
+            this.channel = channel;
+            machine = cache.get(settings);
+            output = ByteBuffer.allocateDirect(length);
+            input = ByteBuffer.allocateDirect(length);
+            expected = new byte[length];
+            actual = new byte[length];
+        }
+
+        /**
+         * Start the next round trip.
+         * @param key of the connection.
+         */
+        public void send(SelectionKey key) throws IOException {
+            machine.translate(message, 0, length, expected);
+
+            output.clear();
+            output.put(message);
+            output.flip();
+            input.clear();
+
+            sent = System.nanoTime();
+            channel.write(output);
+            key.interestOps(output.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Continue the round trip, checking the reply once it is complete.
+         * @param key of the connection.
+         * @return true if the reply is complete.
+         */
+        public boolean update(SelectionKey key) throws IOException {
+            if (output.hasRemaining()) {
+                channel.write(output);
+                if (output.hasRemaining())
+                    return false;
+
+                key.interestOps(SelectionKey.OP_READ);
+            }
+
+            if (channel.read(input) < 0)
+                throw new IOException("Connection closed by the server");
+            if (input.hasRemaining())
+                return false;
+
+            record(System.nanoTime() - sent);
+
+            input.flip();
+            input.get(actual);
+            if (!Arrays.equals(expected, actual))
+                errors++;
+
+            return true;
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the load test.
+     */
+
+    private void record(long latency) {
+        if (count == latencies.length)
+            latencies = Arrays.copyOf(latencies, count * 2);
+        latencies[count++] = latency;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+
+        return sorted[Math.min(sorted.length - 1, (int)(sorted.length * p))];
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--chain")) {
+                chain = true;
+                continue;
+            }
+
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+
+            switch (args[i]) {
+            case "--connections":   connectionCount = Integer.parseInt(args[++i]); break;
+            case "--seconds":       seconds = Integer.parseInt(args[++i]); break;
+            case "--length":        length = Integer.parseInt(args[++i]); break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void test() throws Exception {
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        TeleprinterServer server = new TeleprinterServer(new InetSocketAddress(loopback, 0), cache, settings, null);
+        server.start();
+
+        TeleprinterServer front = null;
+        if (chain) {
+            front = new TeleprinterServer(new InetSocketAddress(loopback, 0), cache, settings,
+                new InetSocketAddress(loopback, server.getPort()));
+            front.start();
+        }
+        final InetSocketAddress address = new InetSocketAddress(loopback, (chain ? front : server).getPort());
+
+        message = new byte[length];
+        for (int i = 0; i < length; ++i)
+            message[i] = (byte)Mapper.indexToChar((i * 7) % 26);
+
+        long start = System.nanoTime();
+        Selector selector = Selector.open();
+        for (int i = 0; i < connectionCount; ++i) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            channel.register(selector, 0, new Connection(channel));
+        }
+        System.out.println("Opened " + connectionCount + " connections in " + millis(System.nanoTime() - start));
+
+        start = System.nanoTime();
+        final long deadline = start + seconds * 1_000_000_000L;
+        for (SelectionKey key : selector.keys())
+            ((Connection)key.attachment()).send(key);
+
+        while (System.nanoTime() < deadline) {
+            selector.select(100);
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                final SelectionKey key = iterator.next();
+                iterator.remove();
+
+                final Connection connection = (Connection)key.attachment();
+                if (connection.update(key))
+                    connection.send(key);
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        for (SelectionKey key : selector.keys())
+            key.channel().close();
+        selector.close();
+
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.println(count + " messages of " + length + " letters on " + connectionCount +
+            " connections in " + millis(elapsed) + ", " + errors + " errors");
+        System.out.println(String.format("Messages/sec: %.0f  Letters/sec: %.0f",
+            count * 1e9 / elapsed, (double)count * length * 1e9 / elapsed));
+        System.out.println("Latency p50: " + millis(percentile(sorted, 0.50)) +
+            "  p99: " + millis(percentile(sorted, 0.99)) +
+            "  p99.9: " + millis(percentile(sorted, 0.999)) +
+            "  max: " + millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+        System.out.println("Server: " + server.getAccepted() + " accepted, " + server.getBytes() + " bytes");
+
+        if (front != null)
+            front.close();
+        server.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        TeleprinterLoadTest test = new TeleprinterLoadTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: TeleprinterLoadTest [--connections <n>] [--seconds <n>] [--length <n>] [--chain]");
+            System.exit(1);
+        }
+
+        test.test();
+    }
+
+}
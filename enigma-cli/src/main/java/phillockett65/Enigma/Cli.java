@@ -0,0 +1,807 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Cli is the command line entry point that provides access to the cipher
+ * without the GUI. The first argument selects the command, the remaining
+ * arguments are options and file names for that command.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Cli {
+
+    private static final long WINDOW = 64L * 1024 * 1024;
+    private static final int CHUNK = 8 * 1024 * 1024;
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    private static void usage() {
+        System.err.println("Usage: Cli <command> [options] [files]");
+        System.err.println();
+        System.err.println("Commands:");
+        System.err.println("  encipher [settings] [--strip] [--trace <file>] <input> <output>");
+        System.err.println("      Translate the input file to the output file. Non-letters are");
+        System.err.println("      copied unchanged unless --strip is given. --trace writes every");
+        System.err.println("      translation step to the file.");
+        System.err.println("  bombe [--reflector <id>] [--rotors <ids>] --crib <text> [--at <n>] <ciphertext>");
+        System.err.println("      Run the Bombe for every wheel order of the rotors (default I,II,III,IV,V)");
+        System.err.println("      with the crib at position n (default 0) of the ciphertext.");
+        System.err.println("  cribs [--reflector <id>] --crib <text> <ciphertexts>");
+        System.err.println("      List the positions in each ciphertext, one per line, where no crib");
+        System.err.println("      letter would encipher to itself.");
+        System.err.println("  search [--reflector <id>] [--rotors <ids>] [--top <k>] <ciphertext>");
+        System.err.println("      Rank every wheel order, right ring setting and start position by the");
+        System.err.println("      index of coincidence of the decrypt with an empty plugboard.");
+        System.err.println("  catalog [--reflector <id>] [--rotors <ids>] <catalog>");
+        System.err.println("      Build the catalog of the cycle structures of AD, BE and CF for every");
+        System.err.println("      wheel order of the rotors (default I,II,III,IV,V) and start position.");
+        System.err.println("  lookup <catalog> (--cycles <AD / BE / CF> | <indicators>)");
+        System.err.println("      List the wheel orders and start positions with the cycle structures,");
+        System.err.println("      given as cycle lengths (e.g. \"13 13 / 10 10 3 3 / 12 12 1 1\") or");
+        System.err.println("      reconstructed from a file of doubled indicators, one per line.");
+        System.err.println("  zygalski [--reflector <id>] [--rotors <ids>] (--sheet <sheet> | <indicators>)");
+        System.err.println("      Stack the Zygalski sheets of the females in a file of indicators, one");
+        System.err.println("      ground setting and 6 letters per line (e.g. \"KDO JKRJXL\"), and list");
+        System.err.println("      the surviving wheel orders and ring settings. --sheet \"I,II,III A\"");
+        System.err.println("      prints the sheets of a wheel order and left rotor position.");
+        System.err.println("  banburismus [--top <k>] [--max-slide <n>] [--min-overlap <n>]");
+        System.err.println("              [--repeat-rate <p>] <ciphertexts>");
+        System.err.println("      Score every slide of every pair of a day's messages, one per line, in");
+        System.err.println("      decibans and list the best, which give the relative rotor offsets.");
+        System.err.println("  plugboard [settings] <ngrams> [--restarts <n>] [--iterations <n>]");
+        System.err.println("            [--temperature <t>] [--max-plugs <n>] <ciphertext>");
+        System.err.println("      Recover the plugboard for the rotor settings by hill-climbing on the");
+        System.err.println("      n-gram score of the decrypt, a temperature of 0 disables annealing.");
+        System.err.println("  ngrams [--lengths <n,...>] <model> <language>=<corpus> ...");
+        System.err.println("      Build an n-gram model of the 2, 3 and 4-grams (by default) of a plain");
+        System.err.println("      text corpus for each language, for use with plugboard --model.");
+        System.err.println("  settings <file> [<text file>]");
+        System.err.println("      Export a saved settings file (e.g. Settings.dat) as readable text.");
+        System.err.println();
+        System.err.println("Settings:");
+        System.err.println("  --wheels <ids>      3 or 4 rotor ids, e.g. I,II,III or Beta,I,II,III");
+        System.err.println("  --rings <values>    ring settings as letters or numbers, e.g. AAA or 1,1,1");
+        System.err.println("  --offsets <values>  rotor offsets as letters or numbers");
+        System.err.println("  --reflector <id>    reflector id, e.g. \"Reflector B\"");
+        System.err.println("  --pairs <pairs>     12 reconfigurable reflector pairs, e.g. \"AB CD ...\"");
+        System.err.println("  --plugs <pairs>     plugboard pairs, e.g. \"AB CD EF\"");
+        System.err.println();
+        System.err.println("N-grams:");
+        System.err.println("  --ngrams <file>     n-gram counts, one \"NGRAM count\" per line");
+        System.err.println("  --corpus <file>     text to count the n-grams from");
+        System.err.println("  --model <file>      n-gram model built by the ngrams command");
+        System.err.println("  --language <id>     language of the model to use (default english)");
+        System.err.println("  --order <n>         n-gram length when counting a corpus or using a");
+        System.err.println("                      model (default 4)");
+    }
+
+    /**
+     * Consume a settings option if the argument is one.
+     * @param settings to update.
+     * @param args all arguments.
+     * @param i index of the current argument.
+     * @return index of the last argument consumed, or -1 if args[i] is not
+     * a settings option.
+     */
+    private static int parseSetting(MachineSettings settings, String[] args, int i) {
+        final String option = args[i];
+        switch (option) {
+        case "--wheels":    settings.setWheels(value(args, i)); break;
+        case "--rings":     settings.setRingSettings(value(args, i)); break;
+        case "--offsets":   settings.setRotorOffsets(value(args, i)); break;
+        case "--reflector": settings.setReflectorChoice(value(args, i)); break;
+        case "--pairs":     settings.setPairs(value(args, i)); break;
+        case "--plugs":     settings.setPlugs(value(args, i)); break;
+        default:
+            return -1;
+        }
+
+        return i + 1;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[i]);
+
+        return args[i + 1];
+    }
+
+    private static String offsetsToString(EnigmaMachine machine) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            builder.append(Mapper.indexToString(machine.getOffset(i)));
+
+        return builder.toString();
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "encipher" command.
+     */
+
+    /**
+     * Remove everything except the letters from the start of a buffer.
+     * @param buffer of ASCII bytes.
+     * @param count of bytes to process.
+     * @return the number of letters kept.
+     */
+    private static int removeNonLetters(byte[] buffer, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; ++i) {
+            final int index = (buffer[i] | 0x20) - 'a';
+            if (index >= 0 && index < 26)
+                buffer[kept++] = buffer[i];
+        }
+
+        return kept;
+    }
+
+    /**
+     * Translate a file of any size to another file. Both files are memory
+     * mapped a window at a time and the data is translated in place in a
+     * fixed working buffer, so the heap use does not depend on the file size.
+     * @param machine to translate with.
+     * @param in path of the input file.
+     * @param out path of the output file.
+     * @param strip non-letters if true, otherwise copy them unchanged.
+     * @return the number of bytes written.
+     */
+    public static long encipherFile(EnigmaMachine machine, Path in, Path out, boolean strip) throws IOException {
+        long written = 0;
+
+        try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+            FileChannel output = FileChannel.open(out, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final long size = input.size();
+            final byte[] buffer = new byte[CHUNK];
+
+            for (long position = 0; position < size; position += WINDOW) {
+                final long length = Math.min(WINDOW, size - position);
+                MappedByteBuffer src = input.map(FileChannel.MapMode.READ_ONLY, position, length);
+                MappedByteBuffer dst = output.map(FileChannel.MapMode.READ_WRITE, written, length);
+
+                while (src.hasRemaining()) {
+                    final int count = Math.min(buffer.length, src.remaining());
+                    src.get(buffer, 0, count);
+                    ParallelTranslator.translate(machine, buffer, 0, count, buffer);
+
+                    final int keep = strip ? removeNonLetters(buffer, count) : count;
+                    dst.put(buffer, 0, keep);
+                }
+
+                written += dst.position();
+            }
+
+            // Remove any unused space from the last window when stripping.
+            output.truncate(written);
+        }
+
+        return written;
+    }
+
+    /**
+     * Process the "encipher" command.
+     * @param args command line arguments following the command.
+     */
+    private static void encipher(String[] args) throws IOException {
+        MachineSettings settings = new MachineSettings();
+        ArrayList<String> files = new ArrayList<String>();
+        boolean strip = false;
+        String trace = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            final int last = parseSetting(settings, args, i);
+            if (last != -1)
+                i = last;
+            else if (args[i].equals("--strip"))
+                strip = true;
+            else if (args[i].equals("--trace"))
+                trace = value(args, i++);
+            else if (args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            else
+                files.add(args[i]);
+        }
+
+        if (files.size() != 2)
+            throw new IllegalArgumentException("Expected input and output files");
+
+        EnigmaMachine machine = settings.build(new RotorRegistry());
+
+        final long written;
+        if (trace == null) {
+            machine.compile();
+            written = encipherFile(machine, Paths.get(files.get(0)), Paths.get(files.get(1)), strip);
+        } else {
+            try (StepTrace steps = StepTrace.text(Files.newOutputStream(Paths.get(trace)))) {
+                machine.setTrace(steps);
+                machine.setShow(true);
+                written = encipherFile(machine, Paths.get(files.get(0)), Paths.get(files.get(1)), strip);
+            }
+        }
+
+        System.out.println("Wrote " + written + " bytes, rotor offsets now " + offsetsToString(machine));
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "bombe" command.
+     */
+
+    /**
+     * Remove everything except the letters from some text and convert them 
+     * to upper case.
+     * @param text to clean.
+     * @return the letters of the text.
+     */
+    private static String lettersOnly(String text) {
+        return text.replaceAll("[^A-Za-z]", "").toUpperCase();
+    }
+
+    /**
+     * Process the "bombe" command.
+     * @param args command line arguments following the command.
+     */
+    private static void bombe(String[] args) throws InterruptedException {
+        Bombe bombe = new Bombe(new RotorRegistry());
+        String crib = null;
+        String ciphertext = null;
+        int offset = 0;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--reflector": bombe.setReflectorChoice(value(args, i++)); break;
+            case "--rotors":    bombe.setRotorIds(Arrays.asList(value(args, i++).split("\\s*,\\s*"))); break;
+            case "--crib":      crib = lettersOnly(value(args, i++)); break;
+            case "--at":        offset = Integer.parseInt(value(args, i++)); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                ciphertext = lettersOnly(args[i]);
+            }
+        }
+
+        if ((crib == null) || (ciphertext == null))
+            throw new IllegalArgumentException("Expected a crib and ciphertext");
+
+        final long start = System.currentTimeMillis();
+        final List<Bombe.Stop> stops = bombe.run(ciphertext, crib, offset);
+        for (Bombe.Stop stop : stops)
+            System.out.println(stop);
+
+        System.out.println(stops.size() + " stops in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "cribs" command.
+     */
+
+    /**
+     * Process the "cribs" command.
+     * @param args command line arguments following the command.
+     */
+    private static void cribs(String[] args) throws IOException, InterruptedException {
+        CribFinder finder = new CribFinder(new RotorRegistry());
+        String crib = null;
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--reflector": finder.setReflectorChoice(value(args, i++)); break;
+            case "--crib":      crib = lettersOnly(value(args, i++)); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                file = args[i];
+            }
+        }
+
+        if ((crib == null) || (file == null))
+            throw new IllegalArgumentException("Expected a crib and a file of ciphertexts");
+
+        ArrayList<String> messages = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII))
+            if (!line.trim().isEmpty())
+                messages.add(line);
+
+        final long start = System.currentTimeMillis();
+        final int[][] results = finder.run(messages, crib);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        long total = 0;
+        for (int i = 0; i < results.length; ++i) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(i).append(':');
+            for (int position : results[i])
+                builder.append(' ').append(position);
+
+            System.out.println(builder);
+            total += results[i].length;
+        }
+
+        System.out.println(total + " positions in " + results.length + " messages in " + elapsed + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "search" command.
+     */
+
+    /**
+     * Process the "search" command.
+     * @param args command line arguments following the command.
+     */
+    private static void search(String[] args) throws InterruptedException {
+        CoincidenceSearch search = new CoincidenceSearch(new RotorRegistry());
+        String ciphertext = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--reflector": search.setReflectorChoice(value(args, i++)); break;
+            case "--rotors":    search.setRotorIds(Arrays.asList(value(args, i++).split("\\s*,\\s*"))); break;
+            case "--top":       search.setTop(Integer.parseInt(value(args, i++))); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                ciphertext = lettersOnly(args[i]);
+            }
+        }
+
+        if (ciphertext == null)
+            throw new IllegalArgumentException("Expected ciphertext");
+
+        final long start = System.currentTimeMillis();
+        for (CoincidenceSearch.Candidate candidate : search.run(ciphertext))
+            System.out.println(candidate);
+
+        System.out.println("Searched in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "catalog" and "lookup" commands.
+     */
+
+    /**
+     * Process the "catalog" command.
+     * @param args command line arguments following the command.
+     */
+    private static void catalog(String[] args) throws IOException, InterruptedException {
+        CycleCatalogBuilder builder = new CycleCatalogBuilder(new RotorRegistry());
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--reflector": builder.setReflectorChoice(value(args, i++)); break;
+            case "--rotors":    builder.setRotorIds(Arrays.asList(value(args, i++).split("\\s*,\\s*"))); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                file = args[i];
+            }
+        }
+
+        if (file == null)
+            throw new IllegalArgumentException("Expected a catalog file");
+
+        final long start = System.currentTimeMillis();
+        final int distinct = builder.run(Paths.get(file));
+
+        System.out.println(distinct + " distinct signatures in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Process the "lookup" command.
+     * @param args command line arguments following the command.
+     */
+    private static void lookup(String[] args) throws IOException {
+        ArrayList<String> files = new ArrayList<String>();
+        String cycles = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--cycles"))
+                cycles = value(args, i++);
+            else if (args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            else
+                files.add(args[i]);
+        }
+
+        if ((files.size() != (cycles == null ? 2 : 1)))
+            throw new IllegalArgumentException("Expected a catalog file and either --cycles or an indicators file");
+
+        final int signature;
+        if (cycles != null) {
+            signature = CycleCatalog.parseSignature(cycles);
+        } else {
+            ArrayList<String> indicators = new ArrayList<String>();
+            for (String line : Files.readAllLines(Paths.get(files.get(1)), StandardCharsets.US_ASCII))
+                if (!line.trim().isEmpty())
+                    indicators.add(line);
+
+            signature = CycleCatalog.indicatorsToSignature(indicators);
+        }
+
+        try (CycleCatalog catalog = CycleCatalog.open(Paths.get(files.get(0)))) {
+            final long start = System.nanoTime();
+            final List<CycleCatalog.Match> matches = catalog.find(signature);
+            final long elapsed = System.nanoTime() - start;
+
+            for (CycleCatalog.Match match : matches)
+                System.out.println(match);
+
+            System.out.println(matches.size() + " matches for " + CycleCatalog.signatureToString(signature) +
+                " in " + (elapsed / 1000) + "us");
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "zygalski" command.
+     */
+
+    /**
+     * Process the "zygalski" command.
+     * @param args command line arguments following the command.
+     */
+    private static void zygalski(String[] args) throws IOException, InterruptedException {
+        ZygalskiSheets sheets = new ZygalskiSheets(new RotorRegistry());
+        String sheet = null;
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--reflector": sheets.setReflectorChoice(value(args, i++)); break;
+            case "--rotors":    sheets.setRotorIds(Arrays.asList(value(args, i++).split("\\s*,\\s*"))); break;
+            case "--sheet":     sheet = value(args, i++); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                file = args[i];
+            }
+        }
+
+        if (sheet != null) {
+            final String[] parts = sheet.trim().split("\\s+");
+            if ((parts.length != 2) || (parts[1].length() != 1))
+                throw new IllegalArgumentException("Expected --sheet \"<wheels> <left letter>\"");
+
+            final String[] wheels = parts[0].split(",");
+            final int left = Mapper.stringToIndex(parts[1]);
+            final String[] names = { "AD", "BE", "CF" };
+            for (int pair = 0; pair < ZygalskiSheets.PAIRS; ++pair) {
+                System.out.println(names[pair] + " " + String.join(",", wheels) + " left " + parts[1].toUpperCase());
+                System.out.println(ZygalskiSheets.sheetToString(sheets.getSheet(wheels, pair, left)));
+            }
+            return;
+        }
+
+        if (file == null)
+            throw new IllegalArgumentException("Expected an indicators file or --sheet");
+
+        ArrayList<String> indicators = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII))
+            if (!line.trim().isEmpty())
+                indicators.add(line);
+
+        final long start = System.currentTimeMillis();
+        final List<ZygalskiSheets.Candidate> candidates = sheets.run(indicators);
+        for (ZygalskiSheets.Candidate candidate : candidates)
+            System.out.println(candidate);
+
+        System.out.println(candidates.size() + " survivors in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "banburismus" command.
+     */
+
+    /**
+     * Process the "banburismus" command.
+     * @param args command line arguments following the command.
+     */
+    private static void banburismus(String[] args) throws IOException, InterruptedException {
+        Banburismus banburismus = new Banburismus();
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--top":           banburismus.setTop(Integer.parseInt(value(args, i++))); break;
+            case "--max-slide":     banburismus.setMaxSlide(Integer.parseInt(value(args, i++))); break;
+            case "--min-overlap":   banburismus.setMinOverlap(Integer.parseInt(value(args, i++))); break;
+            case "--repeat-rate":   banburismus.setRepeatRate(Double.parseDouble(value(args, i++))); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                file = args[i];
+            }
+        }
+
+        if (file == null)
+            throw new IllegalArgumentException("Expected a file of ciphertexts");
+
+        ArrayList<String> messages = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII))
+            if (!line.trim().isEmpty())
+                messages.add(line);
+
+        final long start = System.currentTimeMillis();
+        for (Banburismus.Alignment alignment : banburismus.run(messages))
+            System.out.println(alignment);
+
+        System.out.println("Scored " + messages.size() + " messages in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "plugboard" command.
+     */
+
+    /**
+     * Process the "plugboard" command.
+     * @param args command line arguments following the command.
+     */
+    private static void plugboard(String[] args) throws IOException, InterruptedException {
+        MachineSettings settings = new MachineSettings();
+        String ngrams = null;
+        String corpus = null;
+        String model = null;
+        String language = "english";
+        int order = 4;
+        String ciphertext = null;
+
+        int restarts = -1;
+        int iterations = -1;
+        double temperature = -1;
+        int maxPlugs = -1;
+
+        for (int i = 0; i < args.length; ++i) {
+            final int last = parseSetting(settings, args, i);
+            if (last != -1) {
+                i = last;
+                continue;
+            }
+
+            switch (args[i]) {
+            case "--ngrams":        ngrams = value(args, i++); break;
+            case "--corpus":        corpus = value(args, i++); break;
+            case "--model":         model = value(args, i++); break;
+            case "--language":      language = value(args, i++); break;
+            case "--order":         order = Integer.parseInt(value(args, i++)); break;
+            case "--restarts":      restarts = Integer.parseInt(value(args, i++)); break;
+            case "--iterations":    iterations = Integer.parseInt(value(args, i++)); break;
+            case "--temperature":   temperature = Double.parseDouble(value(args, i++)); break;
+            case "--max-plugs":     maxPlugs = Integer.parseInt(value(args, i++)); break;
+            default:
+                if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                ciphertext = lettersOnly(args[i]);
+            }
+        }
+
+        if (ciphertext == null)
+            throw new IllegalArgumentException("Expected ciphertext");
+
+        NGramModel opened = null;
+        NGramTable table;
+        if (ngrams != null) {
+            table = NGramTable.load(Paths.get(ngrams));
+        } else if (corpus != null) {
+            table = NGramTable.fromText(new String(Files.readAllBytes(Paths.get(corpus)), StandardCharsets.ISO_8859_1), order);
+        } else if (model != null) {
+            opened = NGramModel.open(Paths.get(model));
+            table = opened.getTable(language, order);
+        } else {
+            throw new IllegalArgumentException("Expected --ngrams, --corpus or --model");
+        }
+
+        PlugboardSolver solver = new PlugboardSolver(table);
+        if (restarts != -1)
+            solver.setRestarts(restarts);
+        if (iterations != -1)
+            solver.setIterations(iterations);
+        if (temperature != -1)
+            solver.setTemperature(temperature);
+        if (maxPlugs != -1)
+            solver.setMaxPlugs(maxPlugs);
+
+        final long start = System.currentTimeMillis();
+        final PlugboardSolver.Solution solution;
+        try {
+            solution = solver.run(settings.build(new RotorRegistry()), ciphertext);
+        } finally {
+            if (opened != null)
+                opened.close();
+        }
+
+        System.out.println("Plugs: " + solution.getPlugs());
+        System.out.println(String.format("Score: %.2f", solution.getScore()));
+        System.out.println(solution.getPlaintext());
+        System.out.println("Solved in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "ngrams" command.
+     */
+
+    /**
+     * Process the "ngrams" command.
+     * @param args command line arguments following the command.
+     */
+    private static void ngrams(String[] args) throws IOException {
+        NGramModelBuilder builder = new NGramModelBuilder();
+        int[] lengths = NGramModelBuilder.DEFAULT_LENGTHS;
+        ArrayList<String> corpora = new ArrayList<String>();
+        String file = null;
+
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--lengths"))
+                lengths = Arrays.stream(value(args, i++).split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray();
+            else if (args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            else if (file == null)
+                file = args[i];
+            else
+                corpora.add(args[i]);
+        }
+
+        if ((file == null) || corpora.isEmpty())
+            throw new IllegalArgumentException("Expected a model file and at least one language=corpus");
+
+        final long start = System.currentTimeMillis();
+        for (String corpus : corpora) {
+            final int equals = corpus.indexOf('=');
+            if (equals <= 0)
+                throw new IllegalArgumentException("Expected language=corpus, not " + corpus);
+
+            builder.addCorpus(corpus.substring(0, equals), Paths.get(corpus.substring(equals + 1)), lengths);
+        }
+        builder.write(Paths.get(file));
+
+        System.out.println("Wrote " + Files.size(Paths.get(file)) + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+
+    /************************************************************************
+     * Support code for the "settings" command.
+     */
+
+    /**
+     * Process the "settings" command.
+     * @param args command line arguments following the command.
+     */
+    private static void settings(String[] args) throws IOException {
+        if ((args.length < 1) || (args.length > 2))
+            throw new IllegalArgumentException("Expected a settings file and optional text file");
+
+        final SettingsFile file = SettingsFile.read(Paths.get(args[0]));
+        if (args.length == 2)
+            file.writeText(Paths.get(args[1]));
+        else
+            System.out.print(file.toText());
+    }
+
+
+
+    /************************************************************************
+     * Command line entry point.
+     */
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            System.exit(1);
+        }
+
+        final String command = args[0];
+        final String[] rest = Arrays.copyOfRange(args, 1, args.length);
+
+        try {
+            switch (command) {
+            case "encipher":
+                encipher(rest);
+                break;
+
+            case "bombe":
+                bombe(rest);
+                break;
+
+            case "cribs":
+                cribs(rest);
+                break;
+
+            case "search":
+                search(rest);
+                break;
+
+            case "catalog":
+                catalog(rest);
+                break;
+
+            case "lookup":
+                lookup(rest);
+                break;
+
+            case "zygalski":
+                zygalski(rest);
+                break;
+
+            case "banburismus":
+                banburismus(rest);
+                break;
+
+            case "plugboard":
+                plugboard(rest);
+                break;
+
+            case "ngrams":
+                ngrams(rest);
+                break;
+
+            case "settings":
+                settings(rest);
+                break;
+
+            default:
+                usage();
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(3);
+        }
+    }
+
+}
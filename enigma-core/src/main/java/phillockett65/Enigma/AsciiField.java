@@ -0,0 +1,69 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AsciiField is a class that reads and writes the fixed size text fields of
+ * the binary file formats: ASCII characters, zero padded to the size of the
+ * field. Each format passes its own field size.
+ */
+package phillockett65.Enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+final class AsciiField {
+
+    private AsciiField() {
+    }
+
+    /**
+     * Read a field.
+     * @param buffer positioned at the field.
+     * @param size of the field in bytes.
+     * @return the text without its zero padding.
+     */
+    static String get(ByteBuffer buffer, int size) {
+        final byte[] bytes = new byte[size];
+        buffer.get(bytes);
+
+        int length = 0;
+        while ((length < size) && (bytes[length] != 0))
+            length++;
+
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write a field, zero padded.
+     * @param buffer positioned at the field.
+     * @param text of at most size ASCII characters.
+     * @param size of the field in bytes.
+     */
+    static void put(ByteBuffer buffer, String text, int size) {
+        final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > size)
+            throw new IllegalArgumentException("Text is too long for a " + size + " byte field: " + text);
+
+        buffer.put(bytes);
+        for (int i = bytes.length; i < size; ++i)
+            buffer.put((byte)0);
+    }
+
+}
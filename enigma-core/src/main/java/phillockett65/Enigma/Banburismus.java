@@ -0,0 +1,272 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Banburismus is a class that scores how likely each pair of a day's
+ * messages is to be in depth at each relative offset, as Turing's
+ * Banburismus did for naval traffic. Messages enciphered on the same key
+ * from start positions s key presses apart go through the same machine
+ * states once one is slid s letters against the other. Where they overlap,
+ * the ciphertext letters then repeat whenever the plaintext letters do,
+ * roughly 1 in 17 for German, rather than 1 in 26 by chance. The fourth
+ * wheel of the naval machine never steps, so it makes no difference.
+ *
+ * For every slide, up to the maximum in either direction, the repeats in
+ * the overlap are counted, comparing the letter index arrays directly.
+ * The evidence that the slide is the true one is the log-likelihood ratio
+ * of the repeats and non-repeats, in decibans (tenths of a power of 10).
+ * It is read from two tables built once per run, indexed by the number of
+ * repeats and the number of non-repeats, so scoring an overlap costs two
+ * array reads. The tables hold tenths of a deciban as ints.
+ *
+ * A slide of s letters means that the second message started s key 
+ * presses after the first. As the middle rotor steps once every 26 key
+ * presses, that is a middle rotor offset of s / 26 and a right rotor
+ * offset of s % 26, give or take a turnover.
+ *
+ * As in CoincidenceSearch, each worker thread takes the next pair of
+ * messages from a shared counter and keeps the best alignments in its own
+ * bounded heap, and the heaps are merged at the end.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class Banburismus {
+
+    public static final double GERMAN_REPEAT_RATE = 1.0 / 17;
+    public static final double RANDOM_REPEAT_RATE = 1.0 / 26;
+
+    private double repeatRate = GERMAN_REPEAT_RATE;
+    private int maxSlide = 26 * 26 - 1;
+    private int minOverlap = 40;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int top = 20;
+
+    // The deciban tables, in tenths of a deciban.
+    private int[] repeatScores;
+    private int[] missScores;
+
+
+    /************************************************************************
+     * Alignment is a class that captures a single scored slide of a pair of
+     * messages.
+     */
+    public static class Alignment {
+        private final int first;
+        private final int second;
+        private final int slide;
+        private final int overlap;
+        private final int repeats;
+        private final int score;
+
+        public Alignment(int first, int second, int slide, int overlap, int repeats, int score) {
+            this.first = first;
+            this.second = second;
+            this.slide = slide;
+            this.overlap = overlap;
+            this.repeats = repeats;
+            this.score = score;
+        }
+
+        public int getFirst() { return first; }
+        public int getSecond() { return second; }
+        public int getSlide() { return slide; }
+        public int getMiddleOffset() { return slide / 26; }
+        public int getRightOffset() { return slide % 26; }
+        public int getOverlap() { return overlap; }
+        public int getRepeats() { return repeats; }
+        public double getDecibans() { return score / 10.0; }
+
+        @Override
+        public String toString() {
+            return String.format("%d %d  slide %d (middle +%d, right +%d)  %d/%d repeats  %+.1f dB",
+                first, second, slide, getMiddleOffset(), getRightOffset(), repeats, overlap, getDecibans());
+        }
+    }
+
+    private static final Comparator<Alignment> BY_SCORE = Comparator.comparingInt((Alignment a) -> a.score);
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * @param rate probability that two plaintext letters are the same, 
+     * GERMAN_REPEAT_RATE by default.
+     */
+    public void setRepeatRate(double rate) { repeatRate = rate; }
+    public void setMaxSlide(int slide) { maxSlide = slide; }
+    public void setMinOverlap(int length) { minOverlap = length; }
+    public void setThreads(int count) { threads = count; }
+    public void setTop(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("Top must be at least 1: " + count);
+        top = count;
+    }
+
+
+    /************************************************************************
+     * Support code for scoring.
+     */
+
+    /**
+     * Build the tables of the evidence, in tenths of a deciban, for up to 
+     * length repeats and for up to length non-repeats.
+     * @param length of the longest overlap.
+     */
+    private void buildTables(int length) {
+        final double repeat = 100 * Math.log10(repeatRate / RANDOM_REPEAT_RATE);
+        final double miss = 100 * Math.log10((1 - repeatRate) / (1 - RANDOM_REPEAT_RATE));
+
+        repeatScores = new int[length + 1];
+        missScores = new int[length + 1];
+        for (int i = 0; i <= length; ++i) {
+            repeatScores[i] = (int)Math.round(i * repeat);
+            missScores[i] = (int)Math.round(i * miss);
+        }
+    }
+
+    /**
+     * Add an alignment to a bounded heap, keeping only the best.
+     * @param heap of the best alignments, worst first.
+     * @param alignment to add.
+     */
+    private void offer(PriorityQueue<Alignment> heap, Alignment alignment) {
+        heap.add(alignment);
+        if (heap.size() > top)
+            heap.poll();
+    }
+
+    /**
+     * Count the repeats of one slide of a pair of messages.
+     * @param a letter indices of the message that started first.
+     * @param b letter indices of the message that started slide key 
+     * presses later.
+     * @param slide number of letters b is slid against a.
+     * @param overlap number of letters that overlap.
+     * @return the number of repeats.
+     */
+    private static int countRepeats(byte[] a, byte[] b, int slide, int overlap) {
+        int repeats = 0;
+        for (int i = 0; i < overlap; ++i)
+            if (a[slide + i] == b[i])
+                repeats++;
+
+        return repeats;
+    }
+
+    /**
+     * Score every slide of a pair of messages.
+     * @param messages letter indices of all the messages.
+     * @param first index of the first message of the pair.
+     * @param second index of the second message of the pair.
+     * @param heap of the best alignments found by the calling worker.
+     */
+    private void scorePair(byte[][] messages, int first, int second, PriorityQueue<Alignment> heap) {
+        for (int direction = 0; direction < 2; ++direction) {
+            final int earlier = (direction == 0) ? first : second;
+            final int later = (direction == 0) ? second : first;
+            final byte[] a = messages[earlier];
+            final byte[] b = messages[later];
+
+            for (int slide = direction; slide <= maxSlide; ++slide) {
+                final int overlap = Math.min(a.length - slide, b.length);
+                if (overlap < minOverlap)
+                    break;
+
+                final int repeats = countRepeats(a, b, slide, overlap);
+                final int score = repeatScores[repeats] + missScores[overlap - repeats];
+                if ((heap.size() < top) || (score > heap.peek().score))
+                    offer(heap, new Alignment(earlier, later, slide, overlap, repeats, score));
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Score every slide of every pair of messages.
+     * @param texts of the ciphertexts, non-letters are ignored.
+     * @return the best alignments, best first. The messages are numbered 
+     * from 0 in the order given.
+     */
+    public List<Alignment> run(List<String> texts) throws InterruptedException {
+        if (texts.size() < 2)
+            throw new IllegalArgumentException("Expected at least 2 messages");
+        if ((repeatRate <= RANDOM_REPEAT_RATE) || (repeatRate >= 1))
+            throw new IllegalArgumentException("Repeat rate must be between 1/26 and 1");
+
+        final byte[][] messages = new byte[texts.size()][];
+        int longest = 0;
+        for (int m = 0; m < messages.length; ++m) {
+            final String letters = texts.get(m).replaceAll("[^A-Za-z]", "");
+            messages[m] = new byte[letters.length()];
+            for (int i = 0; i < letters.length(); ++i)
+                messages[m][i] = (byte)Mapper.charToIndex(letters.charAt(i));
+
+            longest = Math.max(longest, letters.length());
+        }
+        buildTables(longest);
+
+        final int count = messages.length;
+        final int pairs = count * (count - 1) / 2;
+        final List<PriorityQueue<Alignment>> heaps = new ArrayList<PriorityQueue<Alignment>>();
+        for (int t = 0; t < threads; ++t)
+            heaps.add(new PriorityQueue<Alignment>(top + 1, BY_SCORE));
+
+        Workers.run("Banburismus", threads, pairs, worker -> {
+            final PriorityQueue<Alignment> heap = heaps.get(worker);
+            // The (first, second) pair reached and its index.
+            final int[] cursor = { 0, 1, 0 };
+
+            return pair -> {
+                // Walk the (first, second) pairs forward to the pair taken.
+                for (; cursor[2] < pair; ++cursor[2]) {
+                    if (++cursor[1] == count) {
+                        ++cursor[0];
+                        cursor[1] = cursor[0] + 1;
+                    }
+                }
+
+                scorePair(messages, cursor[0], cursor[1], heap);
+            };
+        });
+
+        PriorityQueue<Alignment> best = new PriorityQueue<Alignment>(top + 1, BY_SCORE);
+        for (PriorityQueue<Alignment> heap : heaps)
+            for (Alignment alignment : heap)
+                offer(best, alignment);
+
+        ArrayList<Alignment> result = new ArrayList<Alignment>(best);
+        Collections.sort(result, BY_SCORE.reversed());
+
+        return result;
+    }
+
+}
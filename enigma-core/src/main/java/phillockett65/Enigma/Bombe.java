@@ -0,0 +1,308 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Bombe is a class that simulates a Turing-Welchman Bombe with a diagonal
+ * board. Given a ciphertext and a crib (suspected plaintext) at a known
+ * position, it builds the menu of letter pairs, then tests every start
+ * position of every wheel order, reporting the stops.
+ *
+ * For each start position the scramblers (the machine without plugboard)
+ * are taken from a CompiledMachine built with an empty plugboard and all
+ * ring settings at 'A'. The hypothesis that the most connected menu letter
+ * is steckered to 'A' is propagated through the menu and the diagonal board
+ * until closure. The state of each letter is a 26-bit mask of the steckers
+ * that are lit. A stop is reported when either exactly 1 or exactly 25
+ * steckers of the test letter are lit.
+ *
+ * As with the original machine, the ring settings are not found and a stop
+ * may be missed if the middle rotor turns over within the crib.
+ *
+ * Each wheel order is tested on a thread from a fixed size pool.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Bombe {
+
+    private static final int ALL = (1 << 26) - 1;
+
+    private final RotorRegistry registry;
+    private String reflectorChoice = "Reflector B";
+    private List<String> rotorIds = Arrays.asList("I", "II", "III", "IV", "V");
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // The menu.
+    private int testLetter;
+    private int[] edgeCounts;
+    private int[][] edgeOthers;
+    private int[][] edgeSteps;
+    private int[] steps;
+
+
+    /************************************************************************
+     * Stop is a class that captures a single Bombe stop.
+     */
+    public static class Stop {
+        private final String[] wheels;
+        private final int position;
+        private final int testLetter;
+        private final int stecker;
+
+        public Stop(String[] wheels, int position, int testLetter, int stecker) {
+            this.wheels = wheels;
+            this.position = position;
+            this.testLetter = testLetter;
+            this.stecker = stecker;
+        }
+
+        public String getWheelChoice(int index) { return wheels[index]; }
+        public int getPosition() { return position; }
+        public int getTestLetter() { return testLetter; }
+        public int getStecker() { return stecker; }
+
+        @Override
+        public String toString() {
+            return wheels[0] + " " + wheels[1] + " " + wheels[2] + "  " +
+                Mapper.indexToString(CompiledMachine.toLeft(position)) +
+                Mapper.indexToString(CompiledMachine.toMiddle(position)) +
+                Mapper.indexToString(CompiledMachine.toRight(position)) + "  " +
+                Mapper.indexToString(testLetter) + "=" + Mapper.indexToString(stecker);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     */
+    public Bombe(RotorRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; }
+    public void setRotorIds(List<String> ids) { rotorIds = ids; }
+    public void setThreads(int count) { threads = count; }
+
+
+    /************************************************************************
+     * Support code for the menu.
+     */
+
+    /**
+     * Build the menu from the crib and the corresponding ciphertext. Each
+     * crib letter is linked to its ciphertext letter by the scrambler at
+     * that key press. The most connected letter becomes the test letter.
+     * @param ciphertext letters.
+     * @param crib letters.
+     * @param offset of the crib within the ciphertext.
+     */
+    private void buildMenu(String ciphertext, String crib, int offset) {
+        if (crib.isEmpty())
+            throw new IllegalArgumentException("Crib has no letters");
+        if (offset < 0 || offset + crib.length() > ciphertext.length())
+            throw new IllegalArgumentException("Crib does not fit the ciphertext at " + offset);
+
+        final int length = crib.length();
+        edgeCounts = new int[26];
+        edgeOthers = new int[26][length];
+        edgeSteps = new int[26][length];
+        steps = new int[length];
+
+        for (int i = 0; i < length; ++i) {
+            final int a = Mapper.charToIndex(crib.charAt(i));
+            final int b = Mapper.charToIndex(ciphertext.charAt(offset + i));
+            if (a == b)
+                throw new IllegalArgumentException("Crib letter enciphers to itself at " + (offset + i));
+
+            // Key press number offset + i + 1 from the start position.
+            steps[i] = offset + i + 1;
+
+            edgeOthers[a][edgeCounts[a]] = b;
+            edgeSteps[a][edgeCounts[a]++] = i;
+            edgeOthers[b][edgeCounts[b]] = a;
+            edgeSteps[b][edgeCounts[b]++] = i;
+        }
+
+        testLetter = 0;
+        for (int i = 1; i < 26; ++i)
+            if (edgeCounts[i] > edgeCounts[testLetter])
+                testLetter = i;
+    }
+
+
+    /************************************************************************
+     * Support code for testing a wheel order.
+     */
+
+    /**
+     * Build a compiled machine for the wheel order with an empty plugboard
+     * and ring settings of 'A'.
+     * @param wheels rotor ids for the left, middle and right positions.
+     * @return the compiled machine.
+     */
+    private CompiledMachine scramblers(String[] wheels) {
+        EnigmaMachine machine = new EnigmaMachine();
+        machine.setReflector(registry.getReflector(reflectorChoice).getMap());
+        machine.setRotor(EnigmaMachine.LEFT, registry.getRotor(wheels[0]));
+        machine.setRotor(EnigmaMachine.MIDDLE, registry.getRotor(wheels[1]));
+        machine.setRotor(EnigmaMachine.RIGHT, registry.getRotor(wheels[2]));
+
+        if (!machine.compile())
+            throw new IllegalStateException("Bombe needs a compiled machine, increase the budget to " + CompiledMachine.getTableSize());
+
+        return machine.getCompiledMachine();
+    }
+
+    /**
+     * Test every start position for a wheel order.
+     * @param wheels rotor ids for the left, middle and right positions.
+     * @return list of stops.
+     */
+    private List<Stop> testWheelOrder(String[] wheels) {
+        final CompiledMachine scramblers = scramblers(wheels);
+        final int length = steps.length;
+
+        final int[] bases = new int[length];
+        final int[] live = new int[26];
+        final int[] queue = new int[26 * 26];
+
+        ArrayList<Stop> stops = new ArrayList<Stop>();
+
+        for (int start = 0; start < CompiledMachine.POSITIONS; ++start) {
+            // Find the scrambler for each menu link.
+            int position = start;
+            int pressed = 0;
+            for (int i = 0; i < length; ++i) {
+                while (pressed < steps[i]) {
+                    position = scramblers.next(position);
+                    pressed++;
+                }
+                bases[i] = position;
+            }
+
+            final int lit = propagate(scramblers, bases, live, queue);
+            final int count = Integer.bitCount(lit);
+
+            if (count == 1)
+                stops.add(new Stop(wheels, start, testLetter, 0));
+            else if (count == 25)
+                stops.add(new Stop(wheels, start, testLetter, Integer.numberOfTrailingZeros(~lit & ALL)));
+        }
+
+        return stops;
+    }
+
+    /**
+     * Propagate the hypothesis that the test letter is steckered to 'A'
+     * through the menu and the diagonal board until closure, or until every
+     * stecker of the test letter is lit.
+     * @param scramblers compiled machine.
+     * @param bases position of the scrambler for each crib letter.
+     * @param live mask of lit steckers for each letter (working storage).
+     * @param queue of lit steckers to propagate (working storage).
+     * @return the mask of lit steckers for the test letter.
+     */
+    private int propagate(CompiledMachine scramblers, int[] bases, int[] live, int[] queue) {
+        Arrays.fill(live, 0);
+
+        int head = 0;
+        int tail = 0;
+
+        live[testLetter] = 1;
+        queue[tail++] = testLetter * 26;
+
+        while (head < tail) {
+            final int item = queue[head++];
+            final int letter = item / 26;
+            final int stecker = item % 26;
+
+            // Diagonal board: letter=stecker implies stecker=letter.
+            if ((live[stecker] & (1 << letter)) == 0) {
+                live[stecker] |= 1 << letter;
+                queue[tail++] = stecker * 26 + letter;
+            }
+
+            // Menu links: the scrambler maps the stecker of one end to the
+            // stecker of the other end.
+            final int[] others = edgeOthers[letter];
+            final int[] links = edgeSteps[letter];
+            for (int e = 0; e < edgeCounts[letter]; ++e) {
+                final int other = others[e];
+                final int output = scramblers.encipher(bases[links[e]], stecker);
+                if ((live[other] & (1 << output)) == 0) {
+                    live[other] |= 1 << output;
+                    queue[tail++] = other * 26 + output;
+                }
+            }
+
+            if (live[testLetter] == ALL)
+                break;
+        }
+
+        return live[testLetter];
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Run the Bombe for every wheel order.
+     * @param ciphertext letters.
+     * @param crib letters.
+     * @param offset of the crib within the ciphertext.
+     * @return list of stops ordered by wheel order and start position.
+     */
+    public List<Stop> run(String ciphertext, String crib, int offset) throws InterruptedException {
+        if (registry.getReflector(reflectorChoice) == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+
+        for (String id : rotorIds)
+            if (registry.getRotor(id) == null)
+                throw new IllegalArgumentException("Unknown rotor: " + id);
+
+        buildMenu(ciphertext, crib, offset);
+
+        final List<String[]> orders = RotorRegistry.getWheelOrders(rotorIds);
+        final List<List<Stop>> results = new ArrayList<List<Stop>>(orders.size());
+        for (int i = 0; i < orders.size(); ++i)
+            results.add(null);
+
+        Workers.run("Bombe", threads, orders.size(), worker ->
+            i -> results.set(i, testWheelOrder(orders.get(i))));
+
+        ArrayList<Stop> stops = new ArrayList<Stop>();
+        for (List<Stop> result : results)
+            stops.addAll(result);
+
+        return stops;
+    }
+
+}
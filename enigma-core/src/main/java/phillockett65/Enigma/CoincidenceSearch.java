@@ -0,0 +1,228 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CoincidenceSearch is a class that performs a ciphertext only search for
+ * the rotor settings. Every wheel order, every ring setting of the right
+ * rotor and every start position is tried with an empty plugboard and the
+ * decrypts are ranked by their index of coincidence, keeping the best few.
+ *
+ * Each worker thread owns a single EnigmaMachine that is reloaded for each
+ * wheel order it takes, so no Rotor or machine state is shared between
+ * threads. The machine is compiled once per wheel order with the ring
+ * settings at 'A'. Turning the ring of the right rotor is then equivalent to
+ * reading the table at a shifted right rotor position, while the stepping
+ * (which depends on the visible offsets only) is unchanged. This allows the
+ * stepping sequence of each start position to be shared by all 26 rings.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class CoincidenceSearch {
+
+    private final RotorRegistry registry;
+    private String reflectorChoice = "Reflector B";
+    private List<String> rotorIds = Arrays.asList("I", "II", "III", "IV", "V");
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int top = 10;
+
+
+    /************************************************************************
+     * Candidate is a class that captures a single ranked setting.
+     */
+    public static class Candidate {
+        private final String[] wheels;
+        private final int ringSetting;
+        private final int position;
+        private final double ioc;
+
+        public Candidate(String[] wheels, int ringSetting, int position, double ioc) {
+            this.wheels = wheels;
+            this.ringSetting = ringSetting;
+            this.position = position;
+            this.ioc = ioc;
+        }
+
+        public String getWheelChoice(int index) { return wheels[index]; }
+        public int getRingSetting() { return ringSetting; }
+        public int getPosition() { return position; }
+        public double getIoc() { return ioc; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s  ring %s  %s%s%s  %.5f", wheels[0], wheels[1], wheels[2],
+                Mapper.indexToString(ringSetting),
+                Mapper.indexToString(CompiledMachine.toLeft(position)),
+                Mapper.indexToString(CompiledMachine.toMiddle(position)),
+                Mapper.indexToString(CompiledMachine.toRight(position)), ioc);
+        }
+    }
+
+    private static final Comparator<Candidate> BY_IOC = Comparator.comparingDouble(Candidate::getIoc);
+
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     */
+    public CoincidenceSearch(RotorRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; }
+    public void setRotorIds(List<String> ids) { rotorIds = ids; }
+    public void setThreads(int count) { threads = count; }
+    public void setTop(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("Top must be at least 1: " + count);
+        top = count;
+    }
+
+
+    /************************************************************************
+     * Support code for the search.
+     */
+
+    /**
+     * Add a candidate to a bounded heap, keeping only the best.
+     * @param heap of the best candidates, worst first.
+     * @param candidate to add.
+     */
+    private void offer(PriorityQueue<Candidate> heap, Candidate candidate) {
+        heap.add(candidate);
+        if (heap.size() > top)
+            heap.poll();
+    }
+
+    /**
+     * Search every ring setting of the right rotor and start position for
+     * a wheel order.
+     * @param machine owned by the calling worker thread.
+     * @param wheels rotor ids for the left, middle and right positions.
+     * @param ciphertext as indices.
+     * @param heap of the best candidates found by the calling worker.
+     */
+    private void searchWheelOrder(EnigmaMachine machine, String[] wheels, byte[] ciphertext, PriorityQueue<Candidate> heap) {
+        machine.setRotor(EnigmaMachine.LEFT, registry.getRotor(wheels[0]));
+        machine.setRotor(EnigmaMachine.MIDDLE, registry.getRotor(wheels[1]));
+        machine.setRotor(EnigmaMachine.RIGHT, registry.getRotor(wheels[2]));
+        if (!machine.compile())
+            throw new IllegalStateException("Search needs a compiled machine, increase the budget to " + CompiledMachine.getTableSize());
+
+        final CompiledMachine table = machine.getCompiledMachine();
+        final int length = ciphertext.length;
+        final long pairs = (long)length * (length - 1);
+
+        final int[] bases = new int[length];
+        final int[] rights = new int[length];
+        final int[] counts = new int[26];
+
+        for (int start = 0; start < CompiledMachine.POSITIONS; ++start) {
+            int position = start;
+            for (int i = 0; i < length; ++i) {
+                position = table.next(position);
+                rights[i] = CompiledMachine.toRight(position);
+                bases[i] = position - rights[i];
+            }
+
+            for (int ring = 0; ring < 26; ++ring) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < length; ++i) {
+                    int core = rights[i] - ring;
+                    if (core < 0)
+                        core += 26;
+
+                    counts[table.encipher(bases[i] + core, ciphertext[i])]++;
+                }
+
+                long sum = 0;
+                for (int count : counts)
+                    sum += count * (count - 1);
+
+                final double ioc = (double)sum / pairs;
+                if ((heap.size() < top) || (ioc > heap.peek().getIoc()))
+                    offer(heap, new Candidate(wheels, ring, start, ioc));
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Run the search over every wheel order.
+     * @param text of the ciphertext, non-letters are ignored.
+     * @return the best candidates, best first.
+     */
+    public List<Candidate> run(String text) throws InterruptedException {
+        final Rotor reflector = registry.getReflector(reflectorChoice);
+        if (reflector == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+
+        for (String id : rotorIds)
+            if (registry.getRotor(id) == null)
+                throw new IllegalArgumentException("Unknown rotor: " + id);
+
+        final String letters = text.replaceAll("[^A-Za-z]", "");
+        if (letters.length() < 2)
+            throw new IllegalArgumentException("Ciphertext is too short");
+
+        final byte[] ciphertext = new byte[letters.length()];
+        for (int i = 0; i < ciphertext.length; ++i)
+            ciphertext[i] = (byte)Mapper.charToIndex(letters.charAt(i));
+
+        final List<String[]> orders = RotorRegistry.getWheelOrders(rotorIds);
+        final List<PriorityQueue<Candidate>> heaps = new ArrayList<PriorityQueue<Candidate>>();
+        for (int t = 0; t < threads; ++t)
+            heaps.add(new PriorityQueue<Candidate>(top + 1, BY_IOC));
+
+        Workers.run("CoincidenceSearch", threads, orders.size(), worker -> {
+            final EnigmaMachine machine = new EnigmaMachine();
+            machine.setReflector(reflector.getMap());
+            final PriorityQueue<Candidate> heap = heaps.get(worker);
+
+            return i -> searchWheelOrder(machine, orders.get(i), ciphertext, heap);
+        });
+
+        PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(top + 1, BY_IOC);
+        for (PriorityQueue<Candidate> heap : heaps)
+            for (Candidate candidate : heap)
+                offer(best, candidate);
+
+        ArrayList<Candidate> result = new ArrayList<Candidate>(best);
+        Collections.sort(result, BY_IOC.reversed());
+
+        return result;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CompiledMachine is an immutable class that captures the complete output
+ * permutation of a locked down EnigmaMachine for every reachable position of
+ * the left, middle and right rotors, plus the stepping from each position to
+ * the next. Enciphering a letter is then one table read plus one stepping
+ * read. The plugboard, reflector, ring settings and the fourth wheel (which
+ * never steps) are folded into the table at the time it is compiled.
+ *
+ * A position is encoded as left * 676 + middle * 26 + right. The table uses
+ * POSITIONS * 26 bytes plus POSITIONS ints for the stepping, roughly 527KB.
+ * A table is only built if that fits within the budget, which defaults to
+ * DEFAULT_BUDGET and can be changed with the "enigma.compiled.budget" system
+ * property or setBudget().
+ */
+package phillockett65.Enigma;
+
+public class CompiledMachine {
+
+    public static final int POSITIONS = 26 * 26 * 26;
+    public static final long DEFAULT_BUDGET = 1024 * 1024;
+
+    private static volatile long budget = Long.getLong("enigma.compiled.budget", DEFAULT_BUDGET);
+
+    private final byte[] table;
+    private final int[] next;
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    public static long getBudget() { return budget; }
+    public static void setBudget(long bytes) { budget = bytes; }
+
+    /**
+     * @return the number of bytes needed by a compiled machine.
+     */
+    public static long getTableSize() {
+        return (long)POSITIONS * 26 + (long)POSITIONS * Integer.BYTES;
+    }
+
+    /**
+     * @return true if a compiled machine fits within the current budget.
+     */
+    public static boolean isAffordable() {
+        return getTableSize() <= budget;
+    }
+
+    public static int toPosition(int left, int middle, int right) { return (left * 26 + middle) * 26 + right; }
+    public static int toLeft(int position) { return position / 676; }
+    public static int toMiddle(int position) { return (position / 26) % 26; }
+    public static int toRight(int position) { return position % 26; }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor. Only used by EnigmaMachine.compile() which fills the
+     * arrays.
+     * @param table of output permutations, 26 entries per position.
+     * @param next position after stepping from each position.
+     */
+    CompiledMachine(byte[] table, int[] next) {
+        this.table = table;
+        this.next = next;
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    /**
+     * @param position of the rotors.
+     * @return the position of the rotors after the next key press.
+     */
+    public int next(int position) { return next[position]; }
+
+    /**
+     * Translate an index (numerical equivalent of the letter) at the given
+     * position without stepping.
+     * @param position of the rotors.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int encipher(int position, int index) { return table[position * 26 + index]; }
+
+}
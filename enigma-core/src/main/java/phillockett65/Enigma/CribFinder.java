@@ -0,0 +1,214 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CribFinder is a class that drags a crib along ciphertexts and reports
+ * every position where it could fit. The reflector never maps a letter to
+ * itself, so no letter enciphers to itself, and any position where a crib
+ * letter matches the ciphertext letter under it can be ruled out before a
+ * Bombe run. The reflector is checked, as a reconfigurable reflector could
+ * in principle be wired with a letter looped back to itself.
+ *
+ * The ciphertexts and crib are held as upper case ASCII bytes and compared
+ * 8 letters at a time: a long is read from each byte array through a
+ * VarHandle view, the two are XORed, and the result has a zero byte exactly
+ * where the letters clash. A crib whose length is not a multiple of 8 is
+ * finished with one more, overlapping, long. Cribs shorter than 8 letters
+ * are masked so only their own letters are compared.
+ *
+ * As in CoincidenceSearch, each worker thread takes the next ciphertext of
+ * a batch from a shared counter.
+ */
+package phillockett65.Enigma;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+public class CribFinder {
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final RotorRegistry registry;
+    private String reflectorChoice = "Reflector B";
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     */
+    public CribFinder(RotorRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; }
+    public void setThreads(int count) { threads = count; }
+
+
+    /************************************************************************
+     * Support code for dragging the crib.
+     */
+
+    /**
+     * Convert text to its letters only, as upper case ASCII bytes.
+     * @param text to convert, non-letters are ignored.
+     * @return the letters.
+     */
+    public static byte[] letters(String text) {
+        byte[] result = new byte[text.length()];
+        int length = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            final int index = (text.charAt(i) | 0x20) - 'a';
+            if (index >= 0 && index < 26)
+                result[length++] = (byte)(index + 'A');
+        }
+
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * @param word of 8 bytes.
+     * @return true if any byte of the word is zero.
+     */
+    private static boolean hasZeroByte(long word) {
+        return ((word - ONES) & ~word & HIGHS) != 0;
+    }
+
+    private static long word(byte[] bytes, int index) {
+        return (long)LONG.get(bytes, index);
+    }
+
+    private static boolean clashes(byte[] text, int position, byte[] crib) {
+        for (int i = 0; i < crib.length; ++i)
+            if (text[position + i] == crib[i])
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Find every position of a ciphertext where a crib does not clash.
+     * @param text upper case ASCII letters of the ciphertext.
+     * @param length number of letters of text to search.
+     * @param crib upper case ASCII letters of the crib.
+     * @param positions array of at least length - crib.length + 1 ints to 
+     * receive the positions, in ascending order.
+     * @return the number of positions found.
+     */
+    public static int find(byte[] text, int length, byte[] crib, int[] positions) {
+        final int size = crib.length;
+        if (size == 0)
+            throw new IllegalArgumentException("Crib is empty");
+
+        final int last = length - size;
+        int count = 0;
+
+        if (size < 8) {
+            // Bytes beyond the crib are forced non-zero.
+            final byte[] padded = Arrays.copyOf(crib, 8);
+            final long cribWord = word(padded, 0);
+            final long beyond = -1L << (size * 8);
+
+            int position = 0;
+            for (final int end = Math.min(last, length - 8); position <= end; ++position)
+                if (!hasZeroByte((word(text, position) ^ cribWord) | beyond))
+                    positions[count++] = position;
+
+            for (; position <= last; ++position)
+                if (!clashes(text, position, crib))
+                    positions[count++] = position;
+
+            return count;
+        }
+
+        final int words = size / 8;
+        final long[] cribWords = new long[words];
+        for (int w = 0; w < words; ++w)
+            cribWords[w] = word(crib, w * 8);
+        final int tail = size - 8;
+        final long tailWord = word(crib, tail);
+
+        for (int position = 0; position <= last; ++position) {
+            boolean clash = hasZeroByte(word(text, position + tail) ^ tailWord);
+            for (int w = 0; (w < words) && !clash; ++w)
+                clash = hasZeroByte(word(text, position + w * 8) ^ cribWords[w]);
+
+            if (!clash)
+                positions[count++] = position;
+        }
+
+        return count;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Drag a crib along every ciphertext of a batch.
+     * @param texts of the ciphertexts, non-letters are ignored.
+     * @param text of the crib, non-letters are ignored.
+     * @return for each ciphertext, the positions (counting letters only) 
+     * where the crib does not clash.
+     */
+    public int[][] run(List<String> texts, String text) throws InterruptedException {
+        final Rotor reflector = registry.getReflector(reflectorChoice);
+        if (reflector == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+        if (!reflector.isReflector())
+            throw new IllegalArgumentException(reflectorChoice + " is not a reflector");
+        final int[] map = reflector.getMap();
+        for (int i = 0; i < map.length; ++i)
+            if (map[i] == i)
+                throw new IllegalArgumentException(reflectorChoice + " maps " + Mapper.indexToString(i) + " to itself");
+
+        final byte[] crib = letters(text);
+        if (crib.length == 0)
+            throw new IllegalArgumentException("Crib has no letters");
+
+        final int[][] results = new int[texts.size()][];
+        Workers.run("CribFinder", threads, results.length, worker -> {
+            // The positions buffer, reused and grown for each text.
+            final int[][] positions = { new int[0] };
+
+            return i -> {
+                final byte[] ciphertext = letters(texts.get(i));
+                if (positions[0].length < ciphertext.length)
+                    positions[0] = new int[ciphertext.length];
+
+                final int count = find(ciphertext, ciphertext.length, crib, positions[0]);
+                results[i] = Arrays.copyOf(positions[0], count);
+            };
+        });
+
+        return results;
+    }
+
+}
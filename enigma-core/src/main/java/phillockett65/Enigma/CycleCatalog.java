@@ -0,0 +1,461 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CycleCatalog is a class that reads the catalog of Rejewski's
+ * characteristics written by CycleCatalogBuilder. With the doubled message
+ * key indicators of a day, the permutations AD, BE and CF (first to fourth,
+ * second to fifth and third to sixth letter) can be reconstructed. The
+ * plugboard only conjugates them, so their cycle structures depend on the
+ * wheel order and start position alone. As each is the product of two
+ * involutions without fixed points, the cycles of each length come in
+ * pairs, and each cycle structure is one of the 101 partitions of 13. The
+ * signature of a start position is the rank of the three partitions,
+ * (AD * 101 + BE) * 101 + CF.
+ *
+ * The file is memory-mapped and looked up by a binary search over the
+ * distinct signatures, so opening it and finding the candidates for a
+ * signature takes microseconds. The format is:
+ *
+ *     magic       4 bytes  "ENCC"
+ *     version     2 bytes  currently 1
+ *     rotors      2 bytes  number of rotor ids
+ *     reflector   16 bytes ASCII id, zero padded
+ *     rotor ids   rotors x 16 bytes ASCII ids, zero padded, the wheel 
+ *                 orders are RotorRegistry.getWheelOrders() of these
+ *     signatures  4 bytes  number of distinct signatures
+ *     entries     4 bytes  number of entries
+ *     signatures x (signature 4 bytes, index of its first entry 4 bytes),
+ *                 in ascending signature order
+ *     entries x (wheel order * POSITIONS + start position 4 bytes), grouped
+ *                 by signature
+ *
+ * All numbers are big-endian. The catalog is built with the ring settings
+ * at 'A', like Rejewski's, so a start position is the position of the rotor
+ * cores and any turnover within the six letters is that of ring 'A'.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CycleCatalog implements Closeable {
+
+    public final static int MAGIC = 0x454E4343;    // "ENCC"
+    public final static short VERSION = 1;
+
+    public final static int PARTITIONS = 101;
+    public final static int SIGNATURES = PARTITIONS * PARTITIONS * PARTITIONS;
+
+    final static int ID_SIZE = 16;
+    final static int SIGNATURE_SIZE = 8;
+    final static int ENTRY_SIZE = 4;
+
+    private final static long[] CODES = partitionCodes();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String reflectorChoice;
+    private final List<String> rotorIds;
+    private final List<String[]> orders;
+    private final int signatureCount;
+    private final int entryCount;
+    private final int signatureBase;
+    private final int entryBase;
+
+
+    /************************************************************************
+     * Match is a class that captures a single catalog entry.
+     */
+    public static class Match {
+        private final String[] wheels;
+        private final int position;
+
+        public Match(String[] wheels, int position) {
+            this.wheels = wheels;
+            this.position = position;
+        }
+
+        public String getWheelChoice(int index) { return wheels[index]; }
+        public int getPosition() { return position; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s  %s%s%s", wheels[0], wheels[1], wheels[2],
+                Mapper.indexToString(CompiledMachine.toLeft(position)),
+                Mapper.indexToString(CompiledMachine.toMiddle(position)),
+                Mapper.indexToString(CompiledMachine.toRight(position)));
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the cycle structures.
+     */
+
+    /**
+     * Build the code of every partition of 13. A code packs the parts in 
+     * descending order, 4 bits each, so the rank of a partition is the 
+     * index of its code in the sorted array.
+     * @return the sorted codes.
+     */
+    private static long[] partitionCodes() {
+        ArrayList<Long> codes = new ArrayList<Long>();
+        addPartitions(codes, 13, 13, 0L);
+
+        long[] result = new long[codes.size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = codes.get(i);
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    private static void addPartitions(List<Long> codes, int remaining, int largest, long code) {
+        if (remaining == 0) {
+            codes.add(code);
+            return;
+        }
+
+        for (int part = Math.min(remaining, largest); part >= 1; --part)
+            addPartitions(codes, remaining - part, part, (code << 4) | part);
+    }
+
+    /**
+     * Rank the cycle structure of a permutation that is the product of two 
+     * involutions without fixed points.
+     * @param permutation of the 26 letter indices.
+     * @param counts scratch array of at least 27 ints.
+     * @return the rank of the partition of 13, or -1 if the cycles do not 
+     * come in pairs.
+     */
+    static int rank(int[] permutation, int[] counts) {
+        Arrays.fill(counts, 0);
+
+        int visited = 0;
+        for (int start = 0; start < 26; ++start) {
+            if ((visited & (1 << start)) != 0)
+                continue;
+
+            int length = 0;
+            for (int i = start; (visited & (1 << i)) == 0; i = permutation[i]) {
+                visited |= 1 << i;
+                length++;
+            }
+            counts[length]++;
+        }
+
+        long code = 0;
+        for (int length = 13; length >= 1; --length) {
+            if ((counts[length] & 1) != 0)
+                return -1;
+            for (int i = counts[length] / 2; i > 0; --i)
+                code = (code << 4) | length;
+        }
+        for (int length = 14; length <= 26; ++length)
+            if (counts[length] != 0)
+                return -1;
+
+        return Arrays.binarySearch(CODES, code);
+    }
+
+    /**
+     * Convert a rank to the cycle lengths of the permutation, e.g. 
+     * "10 10 2 2 1 1".
+     */
+    private static String rankToString(int rank) {
+        StringBuilder builder = new StringBuilder();
+        for (long code = CODES[rank]; code != 0; code >>>= 4) {
+            final String part = String.valueOf(code & 0xF);
+            builder.insert(0, part + " " + part + " ");
+        }
+
+        return builder.toString().trim();
+    }
+
+    /**
+     * Convert cycle lengths, e.g. "10 10 2 2 1 1", to a rank.
+     */
+    private static int stringToRank(String text) {
+        int[] counts = new int[27];
+        int total = 0;
+        for (String part : text.trim().split("[\\s,]+")) {
+            final int length;
+            try {
+                length = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cycle length: " + part);
+            }
+            if ((length < 1) || (length > 13))
+                throw new IllegalArgumentException("Invalid cycle length: " + part);
+
+            counts[length]++;
+            total += length;
+        }
+        if (total != 26)
+            throw new IllegalArgumentException("Cycle lengths must add up to 26: " + text.trim());
+
+        long code = 0;
+        for (int length = 13; length >= 1; --length) {
+            if ((counts[length] & 1) != 0)
+                throw new IllegalArgumentException("Cycles must come in pairs of equal length: " + text.trim());
+            for (int i = counts[length] / 2; i > 0; --i)
+                code = (code << 4) | length;
+        }
+
+        return Arrays.binarySearch(CODES, code);
+    }
+
+    /**
+     * Convert text of the form "AD / BE / CF", where each is the cycle 
+     * lengths of the permutation, e.g. "10 10 2 2 1 1 / 13 13 / 9 9 4 4", 
+     * to a signature.
+     * @param text of the cycle lengths.
+     * @return the signature.
+     */
+    public static int parseSignature(String text) {
+        final String[] parts = text.split("/");
+        if (parts.length != 3)
+            throw new IllegalArgumentException("Expected the cycle lengths of AD, BE and CF separated by '/'");
+
+        return (stringToRank(parts[0]) * PARTITIONS + stringToRank(parts[1])) * PARTITIONS + stringToRank(parts[2]);
+    }
+
+    /**
+     * @param signature to convert.
+     * @return the signature as text of the form accepted by parseSignature().
+     */
+    public static String signatureToString(int signature) {
+        return rankToString(signature / (PARTITIONS * PARTITIONS)) + " / " +
+            rankToString((signature / PARTITIONS) % PARTITIONS) + " / " +
+            rankToString(signature % PARTITIONS);
+    }
+
+    /**
+     * Reconstruct AD, BE and CF from the doubled message key indicators of 
+     * one day and calculate their signature.
+     * @param indicators each of at least 6 letters, non-letters are ignored.
+     * @return the signature.
+     * @throws IllegalArgumentException if the indicators are inconsistent or 
+     * leave more than one letter of a permutation undetermined.
+     */
+    public static int indicatorsToSignature(List<String> indicators) {
+        final String[] names = { "AD", "BE", "CF" };
+        final int[][] permutations = new int[3][26];
+        for (int[] permutation : permutations)
+            Arrays.fill(permutation, -1);
+
+        // The letters already mapped to, as a bit per letter.
+        final int[] used = new int[3];
+
+        for (String indicator : indicators) {
+            final String letters = indicator.replaceAll("[^A-Za-z]", "");
+            if (letters.length() < 6)
+                throw new IllegalArgumentException("Indicator is too short: " + indicator);
+
+            for (int p = 0; p < 3; ++p) {
+                final int from = Mapper.charToIndex(letters.charAt(p));
+                final int to = Mapper.charToIndex(letters.charAt(p + 3));
+                if (permutations[p][from] == to)
+                    continue;
+
+                if ((permutations[p][from] != -1) || ((used[p] & (1 << to)) != 0))
+                    throw new IllegalArgumentException("Indicator " + indicator + " contradicts an earlier one for " + names[p]);
+
+                permutations[p][from] = to;
+                used[p] |= 1 << to;
+            }
+        }
+
+        int[] counts = new int[27];
+        int signature = 0;
+        for (int p = 0; p < 3; ++p) {
+            int known = 0;
+            int missingFrom = 0;
+            for (int from = 0; from < 26; ++from) {
+                if (permutations[p][from] != -1)
+                    known++;
+                else
+                    missingFrom = from;
+            }
+
+            // A single unknown letter can only map to the unused one.
+            if (known == 25) {
+                permutations[p][missingFrom] = Integer.numberOfTrailingZeros(~used[p]);
+                known++;
+            }
+            if (known != 26)
+                throw new IllegalArgumentException("The indicators only determine " + known + " of 26 letters of " + names[p]);
+
+            final int rank = rank(permutations[p], counts);
+            if (rank < 0)
+                throw new IllegalArgumentException("The cycles of " + names[p] + " do not come in pairs");
+
+            signature = signature * PARTITIONS + rank;
+        }
+
+        return signature;
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    private CycleCatalog(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Not a cycle catalog");
+
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getShort() != VERSION))
+                throw new IOException("Not a cycle catalog");
+
+            final int rotors = buffer.getShort();
+            reflectorChoice = AsciiField.get(buffer, ID_SIZE);
+            ArrayList<String> ids = new ArrayList<String>(rotors);
+            for (int i = 0; i < rotors; ++i)
+                ids.add(AsciiField.get(buffer, ID_SIZE));
+            rotorIds = Collections.unmodifiableList(ids);
+            orders = RotorRegistry.getWheelOrders(rotorIds);
+
+            signatureCount = buffer.getInt();
+            entryCount = buffer.getInt();
+            signatureBase = buffer.position();
+            entryBase = signatureBase + signatureCount * SIGNATURE_SIZE;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated cycle catalog");
+        }
+
+        if ((entryCount != orders.size() * CompiledMachine.POSITIONS) ||
+            ((long)entryBase + (long)entryCount * ENTRY_SIZE != size))
+            throw new IOException("Corrupt cycle catalog");
+    }
+
+    /**
+     * Open a catalog written by CycleCatalogBuilder.
+     * @param path of the catalog.
+     * @return the open catalog, which must be closed.
+     */
+    public static CycleCatalog open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new CycleCatalog(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public String getReflectorChoice() { return reflectorChoice; }
+    public List<String> getRotorIds() { return rotorIds; }
+    public int getSignatureCount() { return signatureCount; }
+    public int getEntryCount() { return entryCount; }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Find the index of a signature in the signature table.
+     * @return the index, or -1 if the signature is not in the catalog.
+     */
+    private int search(int signature) {
+        int low = 0;
+        int high = signatureCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int value = buffer.getInt(signatureBase + middle * SIGNATURE_SIZE);
+            if (value < signature)
+                low = middle + 1;
+            else if (value > signature)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        return -1;
+    }
+
+    private int firstEntry(int index) {
+        if (index == signatureCount)
+            return entryCount;
+
+        return buffer.getInt(signatureBase + index * SIGNATURE_SIZE + 4);
+    }
+
+    /**
+     * @param signature to look up.
+     * @return the number of start positions with the signature.
+     */
+    public int count(int signature) {
+        final int index = search(signature);
+        if (index < 0)
+            return 0;
+
+        return firstEntry(index + 1) - firstEntry(index);
+    }
+
+    /**
+     * Find every wheel order and start position with a signature.
+     * @param signature to look up.
+     * @return the matches, in wheel order then position order.
+     */
+    public List<Match> find(int signature) {
+        final int index = search(signature);
+        if (index < 0)
+            return Collections.emptyList();
+
+        final int first = firstEntry(index);
+        final int last = firstEntry(index + 1);
+        ArrayList<Match> matches = new ArrayList<Match>(last - first);
+        for (int i = first; i < last; ++i) {
+            final int entry = buffer.getInt(entryBase + i * ENTRY_SIZE);
+            matches.add(new Match(orders.get(entry / CompiledMachine.POSITIONS), entry % CompiledMachine.POSITIONS));
+        }
+
+        return matches;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,211 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CycleCatalogBuilder is a class that builds the catalog read by
+ * CycleCatalog. For every wheel order and every one of the POSITIONS start
+ * positions it calculates the cycle structures of AD, BE and CF, then sorts
+ * the entries by signature with a counting sort and writes the file.
+ *
+ * As in CoincidenceSearch, each worker thread owns a single EnigmaMachine
+ * that is compiled for each wheel order it takes, with the ring settings at
+ * 'A' and an empty plugboard. The six permutations of a start position are
+ * then read straight from the compiled table. Each worker writes the
+ * signatures of its wheel orders to its own part of a shared array, so no
+ * other state is shared between threads.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class CycleCatalogBuilder {
+
+    private final RotorRegistry registry;
+    private String reflectorChoice = "Reflector B";
+    private List<String> rotorIds = Arrays.asList("I", "II", "III", "IV", "V");
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     */
+    public CycleCatalogBuilder(RotorRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; }
+    public void setRotorIds(List<String> ids) { rotorIds = ids; }
+    public void setThreads(int count) { threads = count; }
+
+
+    /************************************************************************
+     * Support code for the catalog.
+     */
+
+    /**
+     * Calculate the signature of every start position of a wheel order.
+     * @param machine owned by the calling worker thread.
+     * @param wheels rotor ids for the left, middle and right positions.
+     * @param signatures array to receive the signatures.
+     * @param base index in signatures of start position 0.
+     */
+    private void catalogWheelOrder(EnigmaMachine machine, String[] wheels, int[] signatures, int base) {
+        machine.setRotor(EnigmaMachine.LEFT, registry.getRotor(wheels[0]));
+        machine.setRotor(EnigmaMachine.MIDDLE, registry.getRotor(wheels[1]));
+        machine.setRotor(EnigmaMachine.RIGHT, registry.getRotor(wheels[2]));
+        if (!machine.compile())
+            throw new IllegalStateException("Catalog needs a compiled machine, increase the budget to " + CompiledMachine.getTableSize());
+
+        final CompiledMachine table = machine.getCompiledMachine();
+        final int[] positions = new int[6];
+        final int[] permutation = new int[26];
+        final int[] counts = new int[27];
+
+        for (int start = 0; start < CompiledMachine.POSITIONS; ++start) {
+            int position = start;
+            for (int i = 0; i < 6; ++i) {
+                position = table.next(position);
+                positions[i] = position;
+            }
+
+            int signature = 0;
+            for (int p = 0; p < 3; ++p) {
+                for (int i = 0; i < 26; ++i)
+                    permutation[i] = table.encipher(positions[p + 3], table.encipher(positions[p], i));
+
+                final int rank = CycleCatalog.rank(permutation, counts);
+                if (rank < 0)
+                    throw new IllegalStateException("Reflector " + reflectorChoice + " is not an involution without fixed points");
+
+                signature = signature * CycleCatalog.PARTITIONS + rank;
+            }
+
+            signatures[base + start] = signature;
+        }
+    }
+
+    /**
+     * Write the catalog, replacing the file atomically.
+     * @param path of the file.
+     * @param signatures of every entry, indexed by entry.
+     * @return the number of distinct signatures.
+     */
+    private int write(Path path, int[] signatures) throws IOException {
+        // Counting sort by signature, which keeps the entries of each
+        // signature in entry order.
+        int[] starts = new int[CycleCatalog.SIGNATURES + 1];
+        for (int signature : signatures)
+            starts[signature + 1]++;
+
+        int distinct = 0;
+        for (int signature = 0; signature < CycleCatalog.SIGNATURES; ++signature) {
+            if (starts[signature + 1] != 0)
+                distinct++;
+            starts[signature + 1] += starts[signature];
+        }
+
+        final int headerSize = 4 + 2 + 2 + CycleCatalog.ID_SIZE * (1 + rotorIds.size()) + 4 + 4;
+        final int entryBase = headerSize + distinct * CycleCatalog.SIGNATURE_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(entryBase + signatures.length * CycleCatalog.ENTRY_SIZE);
+
+        buffer.putInt(CycleCatalog.MAGIC);
+        buffer.putShort(CycleCatalog.VERSION);
+        buffer.putShort((short)rotorIds.size());
+        AsciiField.put(buffer, reflectorChoice, CycleCatalog.ID_SIZE);
+        for (String id : rotorIds)
+            AsciiField.put(buffer, id, CycleCatalog.ID_SIZE);
+        buffer.putInt(distinct);
+        buffer.putInt(signatures.length);
+
+        for (int signature = 0; signature < CycleCatalog.SIGNATURES; ++signature) {
+            if (starts[signature + 1] != starts[signature]) {
+                buffer.putInt(signature);
+                buffer.putInt(starts[signature]);
+            }
+        }
+
+        for (int entry = 0; entry < signatures.length; ++entry)
+            buffer.putInt(entryBase + starts[signatures[entry]]++ * CycleCatalog.ENTRY_SIZE, entry);
+        buffer.clear();
+
+        final Path parent = path.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+
+                channel.force(true);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return distinct;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Build the catalog for every wheel order and write it to a file.
+     * @param path of the catalog file.
+     * @return the number of distinct signatures.
+     */
+    public int run(Path path) throws IOException, InterruptedException {
+        final Rotor reflector = registry.getReflector(reflectorChoice);
+        if (reflector == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+
+        for (String id : rotorIds)
+            if (registry.getRotor(id) == null)
+                throw new IllegalArgumentException("Unknown rotor: " + id);
+
+        final List<String[]> orders = RotorRegistry.getWheelOrders(rotorIds);
+        final int[] signatures = new int[orders.size() * CompiledMachine.POSITIONS];
+        Workers.run("CycleCatalogBuilder", threads, orders.size(), worker -> {
+            final EnigmaMachine machine = new EnigmaMachine();
+            machine.setReflector(reflector.getMap());
+
+            return i -> catalogWheelOrder(machine, orders.get(i), signatures, i * CompiledMachine.POSITIONS);
+        });
+
+        return write(path, signatures);
+    }
+
+}
@@ -0,0 +1,667 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaMachine is a class that captures the complete cipher state of an
+ * Enigma machine using primitive arrays only, so that it can be used without
+ * the JavaFX toolkit. The wiring of each rotor position references the pair
+ * of directional maps of the shared, immutable Rotor that already account
+ * for the ring setting, so selecting a rotor or ring setting copies nothing.
+ * The ring settings and rotor offsets are the only per-machine rotor state.
+ * The offsets are held as indices and are advanced by the machine itself,
+ * the Model simply mirrors them into the spinners.
+ */
+package phillockett65.Enigma;
+
+import java.nio.ByteBuffer;
+
+public class EnigmaMachine {
+
+    public static final int ROTOR_COUNT = 4;
+
+    public static final int SLOW = 0;
+    public static final int LEFT = 1;
+    public static final int MIDDLE = 2;
+    public static final int RIGHT = 3;
+
+    private static final Rotor IDENTITY = new Rotor("", "ABCDEFGHIJKLMNOPQRSTUVWXYZ", "", "", "");
+
+    private final Rotor[] rotors = new Rotor[ROTOR_COUNT];
+    private final int[][] rightMaps = new int[ROTOR_COUNT][];
+    private final int[][] leftMaps = new int[ROTOR_COUNT][];
+    private final boolean[][] notches = new boolean[ROTOR_COUNT][];
+    private final boolean[][] turnovers = new boolean[ROTOR_COUNT][];
+
+    private final int[] ringSettings = new int[ROTOR_COUNT];
+    private final int[] offsets = new int[ROTOR_COUNT];
+
+    private final int[] plugboard = new int[26];
+    private final int[] reflector = new int[26];
+
+    private boolean fourthWheel = false;
+    private boolean show = false;
+    private StepTrace trace = null;
+    private final int[] steps = new int[StepTrace.MAX_STEPS];
+
+    private CompiledMachine compiled = null;
+    private SteppingCycle cycle = null;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor. The plugboard and reflector default to straight through
+     * mappings and the rotors default to the identity wiring until they are
+     * selected.
+     */
+    public EnigmaMachine() {
+        for (int i = 0; i < 26; ++i) {
+            plugboard[i] = i;
+            reflector[i] = i;
+        }
+
+        for (int pos = 0; pos < ROTOR_COUNT; ++pos)
+            setRotor(pos, IDENTITY);
+    }
+
+    /**
+     * Copy constructor. The copy is independent of the original apart from 
+     * sharing the immutable Rotors, compiled machine and stepping cycle.
+     * @param other machine to copy.
+     */
+    public EnigmaMachine(EnigmaMachine other) {
+        System.arraycopy(other.rotors, 0, rotors, 0, ROTOR_COUNT);
+        System.arraycopy(other.rightMaps, 0, rightMaps, 0, ROTOR_COUNT);
+        System.arraycopy(other.leftMaps, 0, leftMaps, 0, ROTOR_COUNT);
+        System.arraycopy(other.notches, 0, notches, 0, ROTOR_COUNT);
+        System.arraycopy(other.turnovers, 0, turnovers, 0, ROTOR_COUNT);
+
+        System.arraycopy(other.ringSettings, 0, ringSettings, 0, ROTOR_COUNT);
+        System.arraycopy(other.offsets, 0, offsets, 0, ROTOR_COUNT);
+        System.arraycopy(other.plugboard, 0, plugboard, 0, 26);
+        System.arraycopy(other.reflector, 0, reflector, 0, 26);
+
+        fourthWheel = other.fourthWheel;
+        show = other.show;
+        trace = other.trace;
+        compiled = other.compiled;
+        cycle = other.cycle;
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public String getRotorId(int pos) { return rotors[pos].getId(); }
+    public Rotor getRotor(int pos) { return rotors[pos]; }
+    public int getRingSetting(int pos) { return ringSettings[pos]; }
+    public int getOffset(int pos) { return offsets[pos]; }
+
+    public boolean isFourthWheel() { return fourthWheel; }
+    public boolean isShow() { return show; }
+    public StepTrace getTrace() { return trace; }
+    public boolean isCompiled() { return compiled != null; }
+    public CompiledMachine getCompiledMachine() { return compiled; }
+
+    /**
+     * @return the current position of the left, middle and right rotors as 
+     * used by CompiledMachine.
+     */
+    public int getPosition() {
+        return CompiledMachine.toPosition(offsets[LEFT], offsets[MIDDLE], offsets[RIGHT]);
+    }
+
+
+    /************************************************************************
+     * Setters support code.
+     */
+
+    /**
+     * Select the Rotor to use in the given position. The Rotor is immutable 
+     * so only references to its wiring and stepping flags are kept.
+     * @param pos of the rotor (SLOW, LEFT, MIDDLE or RIGHT).
+     * @param rotor to use in the position.
+     */
+    public void setRotor(int pos, Rotor rotor) {
+        compiled = null;
+        if ((pos == MIDDLE) || (pos == RIGHT))
+            cycle = null;
+
+        rotors[pos] = rotor;
+        if (show)
+            setRotorIds();
+        notches[pos] = rotor.sharedNotches();
+        turnovers[pos] = rotor.sharedTurnovers();
+        rightMaps[pos] = rotor.sharedRightMap(ringSettings[pos]);
+        leftMaps[pos] = rotor.sharedLeftMap(ringSettings[pos]);
+    }
+
+    /**
+     * Set the ring setting of the rotor in the given position and select
+     * the precomputed directional maps for that position.
+     * @param pos of the rotor (SLOW, LEFT, MIDDLE or RIGHT).
+     * @param index of the required ring setting.
+     */
+    public void setRingSetting(int pos, int index) {
+        compiled = null;
+        ringSettings[pos] = index;
+        rightMaps[pos] = rotors[pos].sharedRightMap(index);
+        leftMaps[pos] = rotors[pos].sharedLeftMap(index);
+    }
+
+    /**
+     * Set the offset of the rotor in the given position. The fourth wheel 
+     * is folded into a compiled machine, so turning it discards the 
+     * compiled machine.
+     * @param pos of the rotor (SLOW, LEFT, MIDDLE or RIGHT).
+     * @param index of the required offset.
+     */
+    public void setOffset(int pos, int index) {
+        if ((pos == SLOW) && (offsets[pos] != index))
+            compiled = null;
+
+        offsets[pos] = index;
+    }
+
+    /**
+     * Set the offsets of the left, middle and right rotors from a position 
+     * as used by CompiledMachine.
+     * @param position of the rotors.
+     */
+    public void setPosition(int position) {
+        offsets[LEFT] = CompiledMachine.toLeft(position);
+        offsets[MIDDLE] = CompiledMachine.toMiddle(position);
+        offsets[RIGHT] = CompiledMachine.toRight(position);
+    }
+
+    /**
+     * Set the plugboard mapping.
+     * @param map of swap-over pairs, unconnected letters map to themselves.
+     */
+    public void setPlugboard(int[] map) {
+        compiled = null;
+        for (int i = 0; i < 26; ++i)
+            plugboard[i] = map[i];
+    }
+
+    /**
+     * Set the reflector mapping.
+     * @param map of loop-back wired pairs.
+     */
+    public void setReflector(int[] map) {
+        compiled = null;
+        for (int i = 0; i < 26; ++i)
+            reflector[i] = map[i];
+    }
+
+    public void setFourthWheel(boolean state) { compiled = null; fourthWheel = state; }
+    /**
+     * Show the translation steps of each key press, including those of the 
+     * bulk translations. The steps are added to the trace, which defaults to 
+     * the shared command line trace.
+     * @param state true to show the steps.
+     */
+    public void setShow(boolean state) {
+        show = state;
+        if (show) {
+            if (trace == null)
+                trace = StepTrace.console();
+            setRotorIds();
+        }
+    }
+
+    /**
+     * Set the trace that the translation steps are added to when show is on.
+     * @param trace to use, or null for the shared command line trace.
+     */
+    public void setTrace(StepTrace trace) {
+        this.trace = trace;
+        setShow(show);
+    }
+
+
+    /************************************************************************
+     * Support code for translation.
+     */
+
+    /**
+     * Advance the right rotor then check the other rotors. The notch point of
+     * the middle rotor is used to check for a step of the left rotor and a
+     * double step of the middle rotor. The turnover point of the right rotor
+     * is used to check for a step of the middle rotor.
+     */
+    private void advanceRotors() {
+        // Normal step of the right rotor.
+        offsets[RIGHT] = (offsets[RIGHT] + 1) % 26;
+
+        if (notches[MIDDLE][offsets[MIDDLE]]) {
+            // Double step of the middle rotor, normal step of the left rotor.
+            offsets[MIDDLE] = (offsets[MIDDLE] + 1) % 26;
+            offsets[LEFT] = (offsets[LEFT] + 1) % 26;
+        }
+
+        if (turnovers[RIGHT][offsets[RIGHT]]) {
+            // The right rotor takes the middle rotor one step further.
+            offsets[MIDDLE] = (offsets[MIDDLE] + 1) % 26;
+        }
+    }
+
+    /**
+     * Translate an index through a rotor map at the given offset.
+     * @param map directional map of the rotor.
+     * @param offset of the rotor.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    private static int rotate(int[] map, int offset, int index) {
+        index += offset;
+        if (index >= 26)
+            index -= 26;
+
+        final int output = map[index] - offset;
+
+        return (output < 0) ? output + 26 : output;
+    }
+
+    /**
+     * Translate an index (numerical equivalent of the letter) through the
+     * plugboard, rotors and reflector and back without advancing the rotors.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    private int encipher(int index) {
+        index = plugboard[index];
+
+        index = rotate(rightMaps[RIGHT], offsets[RIGHT], index);
+        index = rotate(rightMaps[MIDDLE], offsets[MIDDLE], index);
+        index = rotate(rightMaps[LEFT], offsets[LEFT], index);
+
+        if (fourthWheel) {
+            index = rotate(rightMaps[SLOW], offsets[SLOW], index);
+            index = reflector[index];
+            index = rotate(leftMaps[SLOW], offsets[SLOW], index);
+        } else {
+            index = reflector[index];
+        }
+
+        index = rotate(leftMaps[LEFT], offsets[LEFT], index);
+        index = rotate(leftMaps[MIDDLE], offsets[MIDDLE], index);
+        index = rotate(leftMaps[RIGHT], offsets[RIGHT], index);
+
+        return plugboard[index];
+    }
+
+    /**
+     * Advance the rotors and translate an index (numerical equivalent of the
+     * letter).
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int translate(int index) {
+        advanceRotors();
+
+        if (show)
+            return traceEncipher(index);
+
+        if (compiled != null)
+            return compiled.encipher(getPosition(), index);
+
+        return encipher(index);
+    }
+
+    /**
+     * Translate a buffer of characters. Letters (either case) advance the 
+     * rotors and are translated to upper case letters, anything else is 
+     * copied unchanged and does not advance the rotors. The source and 
+     * destination may be the same buffer.
+     * @param src buffer of characters to translate.
+     * @param off offset of the first character in both buffers.
+     * @param len number of characters to translate.
+     * @param dst buffer to receive the translated characters.
+     */
+    public void translate(char[] src, int off, int len, char[] dst) {
+        if (show) {
+            translateShow(src, off, len, dst);
+            return;
+        }
+
+        if (compiled != null) {
+            translateCompiled(src, off, len, dst);
+            return;
+        }
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                advanceRotors();
+                dst[i] = (char)(encipher(index) + 'A');
+            } else {
+                dst[i] = (char)c;
+            }
+        }
+    }
+
+    /**
+     * Translate a buffer of ASCII bytes. Letters (either case) advance the 
+     * rotors and are translated to upper case letters, anything else is 
+     * copied unchanged and does not advance the rotors. The source and 
+     * destination may be the same buffer.
+     * @param src buffer of ASCII bytes to translate.
+     * @param off offset of the first byte in both buffers.
+     * @param len number of bytes to translate.
+     * @param dst buffer to receive the translated bytes.
+     */
+    public void translate(byte[] src, int off, int len, byte[] dst) {
+        if (show) {
+            translateShow(src, off, len, dst);
+            return;
+        }
+
+        if (compiled != null) {
+            translateCompiled(src, off, len, dst);
+            return;
+        }
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                advanceRotors();
+                dst[i] = (byte)(encipher(index) + 'A');
+            } else {
+                dst[i] = (byte)c;
+            }
+        }
+    }
+
+    /**
+     * Translate a range of ASCII bytes of a ByteBuffer, which may be direct, 
+     * in place. Letters (either case) advance the rotors and are translated 
+     * to upper case letters, anything else is left unchanged and does not 
+     * advance the rotors. The position and limit of the buffer are not 
+     * changed.
+     * @param buffer of ASCII bytes to translate.
+     * @param off index of the first byte to translate.
+     * @param len number of bytes to translate.
+     */
+    public void translate(ByteBuffer buffer, int off, int len) {
+        if ((compiled != null) && (!show)) {
+            translateCompiled(buffer, off, len);
+            return;
+        }
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int index = (buffer.get(i) | 0x20) - 'a';
+            if (index >= 0 && index < 26)
+                buffer.put(i, (byte)(translate(index) + 'A'));
+        }
+    }
+
+    /**
+     * Calculate the position of the rotors after a key press without 
+     * changing the state of the machine.
+     * @param position of the rotors before the key press.
+     * @return the position of the rotors after the key press.
+     */
+    private int nextPosition(int position) {
+        if (compiled != null)
+            return compiled.next(position);
+
+        final int current = getPosition();
+        setPosition(position);
+        advanceRotors();
+        final int next = getPosition();
+        setPosition(current);
+
+        return next;
+    }
+
+    /**
+     * Move the rotors directly to the position they would reach after a 
+     * number of key presses, without translating anything. The stepping 
+     * cycle through the current position is built on first use and reused 
+     * for as long as the current position lies on it.
+     * @param presses number of key presses to skip.
+     */
+    public void seek(long presses) {
+        if (presses < 0)
+            throw new IllegalArgumentException("Cannot seek backwards: " + presses);
+
+        final int position = getPosition();
+        if ((cycle == null) || (!cycle.contains(position)))
+            cycle = SteppingCycle.build(position, this::nextPosition);
+
+        setPosition(cycle.positionAfter(position, presses));
+    }
+
+
+
+    /************************************************************************
+     * Support code for compiled translation.
+     */
+
+    /**
+     * Compile the current settings into a CompiledMachine so that each 
+     * letter is translated with a single table read. Any change to the 
+     * settings, other than the offsets of the stepping rotors, discards the 
+     * compiled machine and translation falls back to the stage by stage 
+     * path.
+     * @return true if the machine was compiled, false if the table does not 
+     * fit within the CompiledMachine budget.
+     */
+    public boolean compile() {
+        compiled = null;
+
+        if (!CompiledMachine.isAffordable())
+            return false;
+
+        final byte[] table = new byte[CompiledMachine.POSITIONS * 26];
+        final int[] next = new int[CompiledMachine.POSITIONS];
+
+        final int start = getPosition();
+        for (int position = 0; position < CompiledMachine.POSITIONS; ++position) {
+            setPosition(position);
+
+            final int base = position * 26;
+            for (int i = 0; i < 26; ++i)
+                table[base + i] = (byte)encipher(i);
+
+            advanceRotors();
+            next[position] = getPosition();
+        }
+        setPosition(start);
+
+        compiled = new CompiledMachine(table, next);
+
+        return true;
+    }
+
+    /**
+     * Equivalent of translate(char[], int, int, char[]) using the compiled 
+     * machine.
+     */
+    private void translateCompiled(char[] src, int off, int len, char[] dst) {
+        final CompiledMachine machine = compiled;
+        int position = getPosition();
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                position = machine.next(position);
+                dst[i] = (char)(machine.encipher(position, index) + 'A');
+            } else {
+                dst[i] = (char)c;
+            }
+        }
+
+        setPosition(position);
+    }
+
+    /**
+     * Equivalent of translate(byte[], int, int, byte[]) using the compiled 
+     * machine.
+     */
+    private void translateCompiled(byte[] src, int off, int len, byte[] dst) {
+        final CompiledMachine machine = compiled;
+        int position = getPosition();
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                position = machine.next(position);
+                dst[i] = (byte)(machine.encipher(position, index) + 'A');
+            } else {
+                dst[i] = (byte)c;
+            }
+        }
+
+        setPosition(position);
+    }
+
+    private void translateCompiled(ByteBuffer buffer, int off, int len) {
+        final CompiledMachine machine = compiled;
+        int position = getPosition();
+
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int index = (buffer.get(i) | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                position = machine.next(position);
+                buffer.put(i, (byte)(machine.encipher(position, index) + 'A'));
+            }
+        }
+
+        setPosition(position);
+    }
+
+
+
+    /************************************************************************
+     * Support code for showing the translation steps.
+     */
+
+    /**
+     * Give the trace the ids of the current rotors.
+     */
+    private void setRotorIds() {
+        String[] ids = new String[ROTOR_COUNT];
+        for (int pos = 0; pos < ROTOR_COUNT; ++pos)
+            ids[pos] = rotors[pos].getId();
+
+        trace.setRotorIds(ids);
+    }
+
+    private int traceRotor(int count, int stage, int pos, int[] map, int index) {
+        final int output = rotate(map, offsets[pos], index);
+        steps[count] = StepTrace.step(stage + pos, offsets[pos], index, output);
+
+        return output;
+    }
+
+    /**
+     * Equivalent of encipher() that adds each translation step to the trace.
+     * The steps are packed into a preallocated array and added to the trace 
+     * in one go, so nothing is allocated or written here.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    private int traceEncipher(int index) {
+        int count = 0;
+        steps[count++] = StepTrace.step(StepTrace.KEY, 0, index, index);
+
+        int output = plugboard[index];
+        steps[count++] = StepTrace.step(StepTrace.PLUGBOARD, 0, index, output);
+        index = output;
+
+        index = traceRotor(count++, StepTrace.RIGHT_TO_LEFT, RIGHT, rightMaps[RIGHT], index);
+        index = traceRotor(count++, StepTrace.RIGHT_TO_LEFT, MIDDLE, rightMaps[MIDDLE], index);
+        index = traceRotor(count++, StepTrace.RIGHT_TO_LEFT, LEFT, rightMaps[LEFT], index);
+
+        if (fourthWheel)
+            index = traceRotor(count++, StepTrace.RIGHT_TO_LEFT, SLOW, rightMaps[SLOW], index);
+
+        output = reflector[index];
+        steps[count++] = StepTrace.step(StepTrace.REFLECTOR, 0, index, output);
+        index = output;
+
+        if (fourthWheel)
+            index = traceRotor(count++, StepTrace.LEFT_TO_RIGHT, SLOW, leftMaps[SLOW], index);
+
+        index = traceRotor(count++, StepTrace.LEFT_TO_RIGHT, LEFT, leftMaps[LEFT], index);
+        index = traceRotor(count++, StepTrace.LEFT_TO_RIGHT, MIDDLE, leftMaps[MIDDLE], index);
+        index = traceRotor(count++, StepTrace.LEFT_TO_RIGHT, RIGHT, leftMaps[RIGHT], index);
+
+        output = plugboard[index];
+        steps[count++] = StepTrace.step(StepTrace.PLUGBOARD, 0, index, output);
+        steps[count++] = StepTrace.step(StepTrace.LAMP, 0, output, output);
+
+        trace.add(steps, count);
+
+        return output;
+    }
+
+    /**
+     * Equivalent of translate(char[], int, int, char[]) that adds each 
+     * translation step to the trace.
+     */
+    private void translateShow(char[] src, int off, int len, char[] dst) {
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                advanceRotors();
+                dst[i] = (char)(traceEncipher(index) + 'A');
+            } else {
+                dst[i] = (char)c;
+            }
+        }
+    }
+
+    /**
+     * Equivalent of translate(byte[], int, int, byte[]) that adds each 
+     * translation step to the trace.
+     */
+    private void translateShow(byte[] src, int off, int len, byte[] dst) {
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final int c = src[i];
+            final int index = (c | 0x20) - 'a';
+            if (index >= 0 && index < 26) {
+                advanceRotors();
+                dst[i] = (byte)(traceEncipher(index) + 'A');
+            } else {
+                dst[i] = (byte)c;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,433 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * KeyJournal is a class that records key presses and rotor offset changes in
+ * an append only, memory mapped journal file, so that the rotor offsets
+ * survive a crash without rewriting the settings file on every key press.
+ *
+ * Appending a record is a few writes to mapped memory, so it costs no disc
+ * latency and survives the process dying. A background thread forces the
+ * mapped pages to disc in batches, so at most the last flush interval is
+ * lost if the whole system fails.
+ *
+ * Every record holds the rotor offsets after the event, so replaying the
+ * journal only needs the last valid record and is safe to repeat. Each
+ * record has a sequence number and a checksum so a torn write at the end of
+ * the journal is ignored. When the journal is getting full, the owner
+ * compacts it on the flusher thread by saving the settings file and then
+ * discarding the records it covers. If saving fails, this is logged and
+ * compaction is retried after a further eighth of the capacity of events.
+ *
+ * Once the journal is full, the last two slots are overwritten alternately,
+ * so a full journal still replays the latest state. A generation number
+ * tells which of the two is newer. A torn write can then only lose the
+ * record being written, never the one before it.
+ *
+ * The file starts with a 16 byte header ("ENJL", version, record count)
+ * followed by 16 byte records:
+ *
+ *     sequence    4 bytes  1 for the first record, 0 for an empty slot
+ *     type        1 byte   KEY, OFFSET or BULK
+ *     value       1 byte   the key (letter index), rotor position or 0
+ *     offsets     4 bytes  offsets of the rotors after the event
+ *     generation  2 bytes  counts the records written, wrapping around
+ *     checksum    4 bytes  CRC32 of the first 12 bytes
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+public class KeyJournal {
+
+    public final static int MAGIC = 0x454E4A4C;    // "ENJL"
+    public final static short VERSION = 1;
+
+    public final static byte KEY = 1;
+    public final static byte OFFSET = 2;
+    public final static byte BULK = 3;
+
+    public final static int DEFAULT_CAPACITY = 4096;
+    public final static long DEFAULT_FLUSH_INTERVAL = 200;
+
+    private final static int HEADER_SIZE = 16;
+    private final static int RECORD_SIZE = 16;
+    private final static int CHECKED_SIZE = 12;
+
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ScheduledExecutorService flusher;
+
+    private final CRC32 crc = new CRC32();
+    private final byte[] record = new byte[CHECKED_SIZE];
+
+    private int count = 0;
+    private int latest = -1;
+    private int generation = 0;
+    private long appended = 0;
+    private volatile boolean dirty = false;
+
+    private long threshold;
+    private boolean compacting = false;
+    private long overwritten = 0;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Open (or create) a journal file and start the background flusher.
+     * Any existing records are kept for replay.
+     * @param path of the journal file.
+     * @param capacity maximum number of records before compaction.
+     * @param flushInterval milliseconds between forcing changes to disc.
+     */
+    public KeyJournal(Path path, int capacity, long flushInterval) throws IOException {
+        if (capacity < 4)
+            throw new IllegalArgumentException("Journal capacity too small: " + capacity);
+
+        this.capacity = capacity;
+        threshold = capacity * 3 / 4;
+
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        final long size = HEADER_SIZE + (long)capacity * RECORD_SIZE;
+
+        final boolean valid = (channel.size() == size) && (readHeader() == capacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (valid) {
+            count = scan();
+        } else {
+            // New, resized or foreign file: start afresh.
+            for (int i = 0; i < size; ++i)
+                buffer.put(i, (byte)0);
+
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.force();
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KeyJournal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open (or create) a journal file with the default capacity and flush
+     * interval.
+     * @param path of the journal file.
+     */
+    public KeyJournal(Path path) throws IOException {
+        this(path, DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @return the capacity recorded in the header, or -1 if the header is
+     * not valid.
+     */
+    private int readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && (channel.read(header, header.position()) > 0))
+            ;
+
+        if (header.hasRemaining() || (header.getInt(0) != MAGIC) || (header.getShort(4) != VERSION))
+            return -1;
+
+        return header.getInt(8);
+    }
+
+
+    /************************************************************************
+     * Support code for records.
+     */
+
+    private static int recordAt(int index) { return HEADER_SIZE + index * RECORD_SIZE; }
+
+    /**
+     * Check the record at an index.
+     * @param index of the record.
+     * @return true if the record is the next in sequence and its checksum
+     * is correct.
+     */
+    private boolean isValid(int index) {
+        final int at = recordAt(index);
+        if (buffer.getInt(at) != index + 1)
+            return false;
+
+        for (int i = 0; i < CHECKED_SIZE; ++i)
+            record[i] = buffer.get(at + i);
+
+        crc.reset();
+        crc.update(record, 0, CHECKED_SIZE);
+
+        return buffer.getInt(at + CHECKED_SIZE) == (int)crc.getValue();
+    }
+
+    /**
+     * @return the newer of the last two slots, by generation.
+     */
+    private int newerTail() {
+        final int tail = capacity - 2;
+        final int first = buffer.getShort(recordAt(tail) + 10);
+        final int second = buffer.getShort(recordAt(tail + 1) + 10);
+
+        return ((short)(first - second) > 0) ? tail : tail + 1;
+    }
+
+    /**
+     * Find the valid records and the latest of them. The records before the 
+     * last two slots must follow on from the start of the journal. Either of 
+     * the last two slots may hold the latest record once the journal is full.
+     * @return the number of valid records, capacity if the journal is full.
+     */
+    private int scan() {
+        final int tail = capacity - 2;
+        int valid = 0;
+        while ((valid < tail) && isValid(valid))
+            valid++;
+
+        latest = valid - 1;
+        if (valid == tail) {
+            final boolean first = isValid(tail);
+            final boolean second = isValid(tail + 1);
+
+            if (first && second) {
+                latest = newerTail();
+                valid = capacity;
+            } else if (first) {
+                latest = tail;
+                valid = capacity - 1;
+            } else if (second) {
+                // The slot before was torn while the journal was full.
+                latest = tail + 1;
+                valid = capacity;
+            }
+        }
+
+        if (latest >= 0)
+            generation = buffer.getShort(recordAt(latest) + 10) & 0xFFFF;
+
+        return valid;
+    }
+
+    /**
+     * Write the record held in record[] to a slot, with the sequence number 
+     * of the slot and the next generation, making it the latest record.
+     * @param index of the slot.
+     */
+    private void writeRecord(int index) {
+        final int at = recordAt(index);
+
+        generation = (generation + 1) & 0xFFFF;
+        ByteBuffer.wrap(record).putInt(0, index + 1).putShort(10, (short)generation);
+
+        crc.reset();
+        crc.update(record, 0, CHECKED_SIZE);
+
+        for (int i = 0; i < CHECKED_SIZE; ++i)
+            buffer.put(at + i, record[i]);
+        buffer.putInt(at + CHECKED_SIZE, (int)crc.getValue());
+
+        latest = index;
+        dirty = true;
+    }
+
+    /**
+     * Zero the slots in a range.
+     * @param from index of the first slot.
+     * @param to index after the last slot.
+     */
+    private void clear(int from, int to) {
+        for (int i = recordAt(from); i < recordAt(to); ++i)
+            buffer.put(i, (byte)0);
+    }
+
+    /**
+     * Force any appended records to disc, called by the background flusher.
+     */
+    private synchronized void flush() {
+        if (dirty) {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public int getCapacity() { return capacity; }
+    public synchronized int getCount() { return count; }
+    public synchronized long getOverwritten() { return overwritten; }
+
+    /**
+     * Append a record. This only writes to mapped memory, the background
+     * flusher forces it to disc. When the journal is full, the older of the
+     * last two records is overwritten.
+     * @param type of the record, KEY, OFFSET or BULK.
+     * @param value the key, rotor position or 0 for a bulk translation.
+     * @param offsets of the rotors after the event.
+     * @return true if the journal is full enough to need compacting and no
+     * compaction is pending.
+     */
+    public synchronized boolean append(byte type, int value, int[] offsets) {
+        record[4] = type;
+        record[5] = (byte)value;
+        for (int i = 0; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            record[6 + i] = (byte)offsets[i];
+
+        if (count < capacity) {
+            writeRecord(count);
+            count++;
+        } else {
+            if (overwritten++ == 0)
+                System.out.println("Key journal is full, overwriting its last records until it is compacted");
+
+            writeRecord((latest == capacity - 1) ? capacity - 2 : capacity - 1);
+        }
+        appended++;
+
+        return !compacting && (count + overwritten >= threshold);
+    }
+
+    /**
+     * Find the rotor offsets recorded by the latest valid record.
+     * @return the offsets, or null if the journal is empty.
+     */
+    public synchronized int[] replay() {
+        if (latest < 0)
+            return null;
+
+        final int at = recordAt(latest) + 6;
+        int[] offsets = new int[EnigmaMachine.ROTOR_COUNT];
+        for (int i = 0; i < offsets.length; ++i)
+            offsets[i] = buffer.get(at + i);
+
+        return offsets;
+    }
+
+    /**
+     * Discard all the records, called once the state they record has been
+     * saved to the settings file.
+     */
+    public synchronized void reset() {
+        clear(0, count);
+
+        count = 0;
+        latest = -1;
+        threshold = capacity * 3 / 4;
+        overwritten = 0;
+        dirty = false;
+        buffer.force();
+    }
+
+    /**
+     * Save the state recorded so far on the flusher thread and, if that
+     * succeeds, discard the records it covers. If records are appended
+     * meanwhile the latest is kept, as it is newer than the saved state.
+     * @param save writes the state as of this call, returning true if
+     * successful.
+     * @return the result of save, available once the compaction is done.
+     */
+    public synchronized Future<Boolean> compact(BooleanSupplier save) {
+        compacting = true;
+        final long covered = appended;
+
+        return flusher.submit(() -> {
+            final boolean saved = save.getAsBoolean();
+            compacted(covered, saved);
+
+            return saved;
+        });
+    }
+
+    /**
+     * Complete a compaction, called on the flusher thread.
+     * @param covered number of records appended when the state was saved.
+     * @param saved true if the state was saved.
+     */
+    private synchronized void compacted(long covered, boolean saved) {
+        compacting = false;
+        if (!saved) {
+            System.out.println("Key journal compaction failed, retrying after " + capacity / 8 + " more records");
+            threshold = count + overwritten + capacity / 8;
+            return;
+        }
+
+        if (overwritten > 0)
+            System.out.println("Key journal overwrote " + overwritten + " records before compaction");
+
+        if (appended > covered) {
+            // Keep the latest record, rewriting it as the first before
+            // zeroing the rest, so the latest offsets are always replayed.
+            final int at = recordAt(latest);
+            for (int i = 0; i < CHECKED_SIZE; ++i)
+                record[i] = buffer.get(at + i);
+
+            writeRecord(0);
+            clear(1, count);
+            count = 1;
+        } else {
+            clear(0, count);
+            count = 0;
+            latest = -1;
+        }
+
+        threshold = capacity * 3 / 4;
+        overwritten = 0;
+        dirty = false;
+        buffer.force();
+    }
+
+    /**
+     * Stop the background flusher, force any remaining records to disc and
+     * close the file.
+     */
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        channel.close();
+    }
+
+}
@@ -0,0 +1,197 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MachineCache is a class that caches fully built (and where affordable,
+ * compiled) machines keyed by the fingerprint of their settings, so that
+ * many messages sharing the same key only pay for building the machine
+ * once. Each lookup returns a new machine copied from the cached template
+ * with the rotor offsets of the settings applied. The copies share the
+ * immutable Rotors and compiled table of the template.
+ *
+ * The least recently used templates are evicted when either the number of
+ * entries or the estimated memory exceeds its bound. All access is
+ * synchronized on the cache, but machines are built outside the lock so a
+ * slow build does not block hits on other keys.
+ */
+package phillockett65.Enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MachineCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Rough size of an uncompiled machine, the Rotors are shared.
+    private static final long MACHINE_BYTES = 1024;
+
+    private final RotorRegistry registry;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, EnigmaMachine> templates = new LinkedHashMap<String, EnigmaMachine>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     * @param maxEntries maximum number of cached machines.
+     * @param maxBytes maximum estimated memory of the cached machines.
+     */
+    public MachineCache(RotorRegistry registry, int maxEntries, long maxBytes) {
+        if ((maxEntries < 1) || (maxBytes < 1))
+            throw new IllegalArgumentException("Cache bounds must be positive");
+
+        this.registry = registry;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Constructor using the default bounds.
+     * @param registry of the available Rotors.
+     */
+    public MachineCache(RotorRegistry registry) {
+        this(registry, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getMaxEntries() { return maxEntries; }
+    public long getMaxBytes() { return maxBytes; }
+
+    public synchronized int getSize() { return templates.size(); }
+    public synchronized long getBytes() { return bytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    @Override
+    public synchronized String toString() {
+        return "MachineCache [size=" + templates.size() +
+            ", bytes=" + bytes +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            ", evictions=" + evictions +
+            "]";
+    }
+
+
+    /************************************************************************
+     * Support code for the cache.
+     */
+
+    /**
+     * @param machine to estimate.
+     * @return the estimated memory used by the machine.
+     */
+    private static long sizeOf(EnigmaMachine machine) {
+        return machine.isCompiled() ? CompiledMachine.getTableSize() + MACHINE_BYTES : MACHINE_BYTES;
+    }
+
+    /**
+     * Add a template, evicting the least recently used templates until the
+     * cache is within its bounds. The new template itself is never evicted.
+     * @param key fingerprint of the settings.
+     * @param template machine to add.
+     * @return the cached template, which may have been added by another
+     * thread while this one was building.
+     */
+    private synchronized EnigmaMachine add(String key, EnigmaMachine template) {
+        final EnigmaMachine existing = templates.get(key);
+        if (existing != null)
+            return existing;
+
+        templates.put(key, template);
+        bytes += sizeOf(template);
+
+        Iterator<Map.Entry<String, EnigmaMachine>> iterator = templates.entrySet().iterator();
+        while (((templates.size() > maxEntries) || (bytes > maxBytes)) && (templates.size() > 1)) {
+            final Map.Entry<String, EnigmaMachine> eldest = iterator.next();
+            bytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+
+        return template;
+    }
+
+    private synchronized EnigmaMachine lookup(String key) {
+        final EnigmaMachine template = templates.get(key);
+        if (template != null)
+            hits++;
+        else
+            misses++;
+
+        return template;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Get a machine for the settings, building and caching the template if
+     * these settings have not been seen recently.
+     * @param settings of the required machine.
+     * @return a new machine that can be used independently of any other.
+     */
+    public EnigmaMachine get(MachineSettings settings) {
+        final String key = settings.getFingerprint();
+
+        EnigmaMachine template = lookup(key);
+        if (template == null) {
+            EnigmaMachine machine = settings.build(registry);
+            machine.compile();
+            template = add(key, machine);
+        }
+
+        EnigmaMachine machine = new EnigmaMachine(template);
+        for (int i = EnigmaMachine.LEFT; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            machine.setOffset(i, settings.getRotorIndex(i));
+
+        return machine;
+    }
+
+    /**
+     * Remove all the cached machines, the counters are kept.
+     */
+    public synchronized void clear() {
+        templates.clear();
+        bytes = 0;
+    }
+
+}
@@ -0,0 +1,351 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MachineSettings is a class that captures the settings of an Enigma machine
+ * as modelled by the Model (wheel order, ring settings, rotor offsets,
+ * reflector or reconfigurable reflector pairs and plugboard) without any GUI
+ * dependencies. The settings can be parsed from text and used to build an
+ * EnigmaMachine. Invalid settings are reported with an
+ * IllegalArgumentException.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+
+public class MachineSettings {
+
+    public final static int PLUG_COUNT = 13;
+    public final static int PAIR_COUNT = 12;
+
+    private String reflectorChoice = "Reflector B";
+    private boolean reconfigurable = false;
+    private ArrayList<Pair> pairs = new ArrayList<Pair>();
+
+    private String[] wheels = { "Beta", "I", "II", "III" };
+    private int[] ringSettings = new int[EnigmaMachine.ROTOR_COUNT];
+    private int[] rotorOffsets = new int[EnigmaMachine.ROTOR_COUNT];
+    private boolean fourthWheel = false;
+
+    private ArrayList<Pair> plugs = new ArrayList<Pair>();
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    /**
+     * Split text into tokens separated by commas and/or white space. If
+     * there are no separators and the text is all letters, each letter is a
+     * token, so "ABC" is equivalent to "A,B,C".
+     * @param text to split.
+     * @return array of tokens.
+     */
+    private static String[] split(String text) {
+        text = text.trim();
+        if (text.isEmpty())
+            return new String[0];
+
+        if (text.matches("[A-Za-z]+"))
+            return text.split("");
+
+        return text.split("[,\\s]+");
+    }
+
+    /**
+     * Convert a letter ("A" to "Z") or number ("1" to "26") to an index.
+     * @param token to convert.
+     * @return the index (0 to 25).
+     */
+    private static int toIndex(String token) {
+        if (token.matches("[A-Za-z]"))
+            return Mapper.stringToIndex(token);
+
+        if (token.matches("[0-9]+")) {
+            final int value = Integer.parseInt(token);
+            if ((value >= 1) && (value <= 26))
+                return value - 1;
+        }
+
+        throw new IllegalArgumentException("Invalid letter or number: " + token);
+    }
+
+    /**
+     * Parse right aligned rotor values, so 3 values are applied to the left,
+     * middle and right rotors and 4 values include the fourth rotor.
+     * @param text of values.
+     * @param values array updated with the parsed values.
+     */
+    private static void parseValues(String text, int[] values) {
+        final String[] tokens = split(text);
+        if ((tokens.length < 3) || (tokens.length > EnigmaMachine.ROTOR_COUNT))
+            throw new IllegalArgumentException("Expected 3 or 4 values: " + text);
+
+        final int first = EnigmaMachine.ROTOR_COUNT - tokens.length;
+        for (int i = 0; i < tokens.length; ++i)
+            values[first + i] = toIndex(tokens[i]);
+    }
+
+    /**
+     * Parse a list of letter pairs such as "AB CD EF".
+     * @param text of letter pairs.
+     * @return list of Pairs.
+     */
+    private static ArrayList<Pair> parsePairs(String text) {
+        ArrayList<Pair> list = new ArrayList<Pair>();
+
+        for (String token : text.trim().split("[,\\s]+")) {
+            if (token.isEmpty())
+                continue;
+
+            Pair pair = new Pair();
+            pair.set(token);
+            pair.sanitize();
+            if (!pair.isValid())
+                throw new IllegalArgumentException("Invalid pair: " + token);
+
+            list.add(pair);
+        }
+
+        return list;
+    }
+
+    /**
+     * Build a letter mapping from a list of Pairs, checking that no letter
+     * is used more than once.
+     * @param list of Pairs.
+     * @return map of indices, unused letters map to themselves.
+     */
+    private static int[] buildMap(ArrayList<Pair> list) {
+        int[] map = new int[26];
+        for (int i = 0; i < map.length; ++i)
+            map[i] = i;
+
+        boolean[] used = new boolean[26];
+        for (Pair pair : list) {
+            final int a = pair.indexAt(0);
+            final int b = pair.indexAt(1);
+            if (used[a] || used[b])
+                throw new IllegalArgumentException("Letter used more than once: " + pair.get());
+
+            used[a] = true;
+            used[b] = true;
+            map[a] = b;
+            map[b] = a;
+        }
+
+        return map;
+    }
+
+    private static String pairsToString(ArrayList<Pair> list) {
+        StringBuilder builder = new StringBuilder();
+        for (Pair pair : list) {
+            if (builder.length() != 0)
+                builder.append(' ');
+            builder.append(pair.get());
+        }
+
+        return builder.toString();
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public String getReflectorChoice() { return reflectorChoice; }
+    public boolean isReconfigurable() { return reconfigurable; }
+    public String getPairs() { return pairsToString(pairs); }
+
+    public String getWheelChoice(int index) { return wheels[index]; }
+    public int getRingIndex(int index) { return ringSettings[index]; }
+    public int getRotorIndex(int index) { return rotorOffsets[index]; }
+    public boolean isFourthWheel() { return fourthWheel; }
+
+    public String getPlugs() { return pairsToString(plugs); }
+
+    /**
+     * Build a canonical fingerprint of the settings that determine the 
+     * wiring of a machine: the wheel order, ring settings, reflector (or 
+     * reconfigurable pairs) and plugboard. The offsets of the left, middle 
+     * and right rotors change with every key press and are not included, 
+     * the offset of the fourth rotor never changes and is. Equivalent 
+     * settings, such as the same plugs given in a different order, have 
+     * the same fingerprint.
+     * @return the fingerprint.
+     */
+    public String getFingerprint() {
+        StringBuilder builder = new StringBuilder();
+
+        final int first = fourthWheel ? EnigmaMachine.SLOW : EnigmaMachine.LEFT;
+        for (int i = first; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            builder.append(wheels[i]).append(',');
+
+        builder.append('|');
+        for (int i = first; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            builder.append(Mapper.indexToString(ringSettings[i]));
+
+        if (fourthWheel)
+            builder.append('|').append(Mapper.indexToString(rotorOffsets[EnigmaMachine.SLOW]));
+
+        builder.append('|');
+        if (reconfigurable)
+            appendMap(builder, buildMap(pairs));
+        else
+            builder.append(reflectorChoice);
+
+        builder.append('|');
+        appendMap(builder, buildMap(plugs));
+
+        return builder.toString();
+    }
+
+    private static void appendMap(StringBuilder builder, int[] map) {
+        for (int i = 0; i < map.length; ++i)
+            builder.append((char)Mapper.indexToChar(map[i]));
+    }
+
+
+    /************************************************************************
+     * Setters support code.
+     */
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; reconfigurable = false; }
+    public void setWheelChoice(int index, String choice) { wheels[index] = choice; }
+    public void setRingIndex(int index, int value) { ringSettings[index] = value; }
+    public void setRotorIndex(int index, int value) { rotorOffsets[index] = value; }
+    public void setFourthWheel(boolean state) { fourthWheel = state; }
+
+    /**
+     * Set the reconfigurable reflector from 12 letter pairs, the thirteenth
+     * pair is assumed from the two remaining unused letters.
+     * @param text of 12 letter pairs such as "AB CD EF ...".
+     */
+    public void setPairs(String text) {
+        ArrayList<Pair> list = parsePairs(text);
+        if (list.size() != PAIR_COUNT)
+            throw new IllegalArgumentException("Reconfigurable reflector needs " + PAIR_COUNT + " pairs: " + text);
+
+        buildMap(list);
+        pairs = list;
+        reconfigurable = true;
+    }
+
+    /**
+     * Set the wheel order from a comma separated list of 3 or 4 rotor ids.
+     * Four ids select the fourth rotor.
+     * @param text of rotor ids such as "I,II,III" or "Beta,I,II,III".
+     */
+    public void setWheels(String text) {
+        final String[] tokens = text.trim().split("\\s*,\\s*");
+        if ((tokens.length < 3) || (tokens.length > EnigmaMachine.ROTOR_COUNT))
+            throw new IllegalArgumentException("Expected 3 or 4 rotors: " + text);
+
+        fourthWheel = tokens.length == EnigmaMachine.ROTOR_COUNT;
+
+        final int first = EnigmaMachine.ROTOR_COUNT - tokens.length;
+        for (int i = 0; i < tokens.length; ++i)
+            wheels[first + i] = tokens[i];
+    }
+
+    public void setRingSettings(String text) { parseValues(text, ringSettings); }
+    public void setRotorOffsets(String text) { parseValues(text, rotorOffsets); }
+
+    /**
+     * Set the plugboard from up to 13 letter pairs.
+     * @param text of letter pairs such as "AB CD EF".
+     */
+    public void setPlugs(String text) {
+        ArrayList<Pair> list = parsePairs(text);
+        if (list.size() > PLUG_COUNT)
+            throw new IllegalArgumentException("Too many plugboard pairs: " + text);
+
+        buildMap(list);
+        plugs = list;
+    }
+
+
+    /************************************************************************
+     * Support code for building machines.
+     */
+
+    /**
+     * @return the active reflector map.
+     */
+    private int[] getReflectorMap(RotorRegistry registry) {
+        if (reconfigurable) {
+            int[] map = buildMap(pairs);
+
+            // Set up unconfigured pair.
+            int x = -1;
+            for (int i = 0; i < map.length; ++i)
+                if (map[i] == i) {
+                    if (x == -1) {
+                        x = i;
+                    } else {
+                        map[x] = i;
+                        map[i] = x;
+                    }
+                }
+
+            return map;
+        }
+
+        Rotor reflector = registry.getReflector(reflectorChoice);
+        if (reflector == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+
+        return reflector.getMap();
+    }
+
+    /**
+     * Load a machine with these settings.
+     * @param registry of the available Rotors.
+     * @param machine to load.
+     */
+    public void apply(RotorRegistry registry, EnigmaMachine machine) {
+        machine.setReflector(getReflectorMap(registry));
+        machine.setPlugboard(buildMap(plugs));
+        machine.setFourthWheel(fourthWheel);
+
+        for (int i = 0; i < EnigmaMachine.ROTOR_COUNT; ++i) {
+            Rotor rotor = registry.getRotor(wheels[i]);
+            if (rotor == null)
+                throw new IllegalArgumentException("Unknown rotor: " + wheels[i]);
+
+            machine.setRotor(i, rotor);
+            machine.setRingSetting(i, ringSettings[i]);
+            machine.setOffset(i, rotorOffsets[i]);
+        }
+    }
+
+    /**
+     * Build a new machine with these settings.
+     * @param registry of the available Rotors.
+     * @return the new EnigmaMachine.
+     */
+    public EnigmaMachine build(RotorRegistry registry) {
+        EnigmaMachine machine = new EnigmaMachine();
+        apply(registry, machine);
+
+        return machine;
+    }
+
+}
@@ -41,8 +41,8 @@ public class Mapper {
     protected final int[] map;
     protected final boolean reflect;
 
-    protected int[] leftMap;
-    protected int[] rightMap;
+    protected final int[] leftMap;
+    protected final int[] rightMap;
 
 
     /************************************************************************
@@ -122,23 +122,15 @@ public class Mapper {
      * Setters support code.
      */
 
-    public void setOffset(int value) {}
-
     /**
      * Translates (swaps) an index (numerical equivalent of the letter) to 
      * another using the map.
      * @param direction of mapping.
      * @param index to translate.
-     * @param show the translation step on the command line.
      * @return the translated index.
      */
-    public int swap(int direction, int index, boolean show) {
-        final int output = (direction == RIGHT_TO_LEFT) ? rightToLeft(index) : leftToRight(index);
-
-        if (show)
-            System.out.print(id + "(" + Rotor.indexToString(index) + "->" + Rotor.indexToString(output) + ")  ");
-
-        return output;
+    public int swap(int direction, int index) {
+        return (direction == RIGHT_TO_LEFT) ? rightToLeft(index) : leftToRight(index);
     }
 
 
@@ -0,0 +1,172 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NGramModel is a class that reads the n-gram tables of one or more
+ * languages from a binary file written by NGramModelBuilder. The file is
+ * memory-mapped and each table is an NGramTable viewing its part of the
+ * file, so opening a model costs no more than reading its directory, and
+ * the pages of a table are only read as it is used. The format is:
+ *
+ *     magic       4 bytes  "ENGM"
+ *     version     2 bytes  currently 1
+ *     tables      2 bytes  number of tables
+ *     tables x directory entry:
+ *         language    16 bytes ASCII id, zero padded, e.g. "english"
+ *         length      4 bytes  n-gram length
+ *         floor       4 bytes  float score of the n-grams never seen
+ *         offset      4 bytes  offset of the scores from the file start
+ *     tables x scores, 26^length floats, the log10 probability of each
+ *                 n-gram indexed by the packed n-gram
+ *
+ * All numbers are big-endian.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NGramModel implements Closeable {
+
+    public final static int MAGIC = 0x454E474D;    // "ENGM"
+    public final static short VERSION = 1;
+
+    final static int HEADER_SIZE = 8;
+    final static int LANGUAGE_SIZE = 16;
+    final static int ENTRY_SIZE = LANGUAGE_SIZE + 12;
+
+    private final FileChannel channel;
+    private final Map<String, NGramTable> tables = new LinkedHashMap<String, NGramTable>();
+    private final List<String> languages = new ArrayList<String>();
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    private NGramModel(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Not an n-gram model");
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getShort() != VERSION))
+                throw new IOException("Not an n-gram model");
+
+            final int count = buffer.getShort();
+            for (int i = 0; i < count; ++i) {
+                final String language = AsciiField.get(buffer, LANGUAGE_SIZE);
+                final int length = buffer.getInt();
+                final float floor = buffer.getFloat();
+                final int offset = buffer.getInt();
+
+                if ((length < NGramTable.MIN_LENGTH) || (length > NGramTable.MAX_LENGTH))
+                    throw new IOException("Corrupt n-gram model");
+                final int bytes = NGramTable.size(length) * Float.BYTES;
+                if ((offset < HEADER_SIZE + count * ENTRY_SIZE) || ((long)offset + bytes > size))
+                    throw new IOException("Corrupt n-gram model");
+
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(offset).limit(offset + bytes);
+                tables.put(key(language, length), new NGramTable(length, slice.slice().asFloatBuffer(), floor));
+
+                if (!languages.contains(language))
+                    languages.add(language);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated n-gram model");
+        }
+    }
+
+    /**
+     * Open a model written by NGramModelBuilder.
+     * @param path of the model.
+     * @return the open model, which must be closed.
+     */
+    public static NGramModel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new NGramModel(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String key(String language, int length) {
+        return language + "/" + length;
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public List<String> getLanguages() { return Collections.unmodifiableList(languages); }
+
+    /**
+     * @param language of the table, e.g. "english".
+     * @param length of the n-grams.
+     * @return true if the model has the table.
+     */
+    public boolean hasTable(String language, int length) {
+        return tables.containsKey(key(language, length));
+    }
+
+    /**
+     * Get a table. The table views the mapped file, so it must not be used 
+     * after the model is closed.
+     * @param language of the table, e.g. "english".
+     * @param length of the n-grams.
+     * @return the table.
+     */
+    public NGramTable getTable(String language, int length) {
+        final NGramTable table = tables.get(key(language, length));
+        if (table == null)
+            throw new IllegalArgumentException("No " + length + "-gram table for " + language);
+
+        return table;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
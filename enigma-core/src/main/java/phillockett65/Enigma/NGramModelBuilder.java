@@ -0,0 +1,136 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NGramModelBuilder is a class that builds the binary file read by
+ * NGramModel from plain text corpora, one or more per language. The
+ * n-grams of each corpus are counted by NGramTable and the scores written
+ * in the order the tables were added.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NGramModelBuilder {
+
+    public final static int[] DEFAULT_LENGTHS = { 2, 3, 4 };
+
+    private final List<String> languages = new ArrayList<String>();
+    private final List<NGramTable> tables = new ArrayList<NGramTable>();
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Add a table.
+     * @param language of the table, at most 16 ASCII characters.
+     * @param table to add.
+     */
+    public void add(String language, NGramTable table) {
+        if (language.isEmpty() || (language.length() > NGramModel.LANGUAGE_SIZE))
+            throw new IllegalArgumentException("Language must be 1 to " + NGramModel.LANGUAGE_SIZE + " characters: " + language);
+
+        for (int i = 0; i < tables.size(); ++i)
+            if (languages.get(i).equals(language) && (tables.get(i).getLength() == table.getLength()))
+                throw new IllegalArgumentException("Duplicate " + table.getLength() + "-gram table for " + language);
+
+        languages.add(language);
+        tables.add(table);
+    }
+
+    /**
+     * Count the n-grams of a plain text corpus and add a table for each 
+     * length.
+     * @param language of the corpus.
+     * @param corpus path of the plain text, anything but letters is ignored.
+     * @param lengths of the n-grams to count.
+     */
+    public void addCorpus(String language, Path corpus, int... lengths) throws IOException {
+        final String text = new String(Files.readAllBytes(corpus), StandardCharsets.ISO_8859_1);
+        for (int length : lengths)
+            add(language, NGramTable.fromText(text, length));
+    }
+
+    /**
+     * Write the model, replacing the file atomically.
+     * @param path of the file.
+     */
+    public void write(Path path) throws IOException {
+        if (tables.isEmpty())
+            throw new IllegalArgumentException("No n-gram tables to write");
+
+        long size = NGramModel.HEADER_SIZE + (long)tables.size() * NGramModel.ENTRY_SIZE;
+        for (NGramTable table : tables)
+            size += (long)NGramTable.size(table.getLength()) * Float.BYTES;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("N-gram model is too large");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size);
+        buffer.putInt(NGramModel.MAGIC);
+        buffer.putShort(NGramModel.VERSION);
+        buffer.putShort((short)tables.size());
+
+        int offset = NGramModel.HEADER_SIZE + tables.size() * NGramModel.ENTRY_SIZE;
+        for (int i = 0; i < tables.size(); ++i) {
+            final NGramTable table = tables.get(i);
+            AsciiField.put(buffer, languages.get(i), NGramModel.LANGUAGE_SIZE);
+            buffer.putInt(table.getLength());
+            buffer.putFloat(table.getFloor());
+            buffer.putInt(offset);
+            offset += NGramTable.size(table.getLength()) * Float.BYTES;
+        }
+
+        for (NGramTable table : tables) {
+            final FloatBuffer scores = table.getScores();
+            buffer.asFloatBuffer().put(scores);
+            buffer.position(buffer.position() + scores.capacity() * Float.BYTES);
+        }
+        buffer.flip();
+
+        final Path parent = path.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+
+                channel.force(true);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+}
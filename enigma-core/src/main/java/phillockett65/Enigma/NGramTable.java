@@ -0,0 +1,238 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NGramTable is a class that captures the log10 probabilities of every
+ * letter n-gram (trigrams or quadgrams usually) for scoring candidate
+ * decrypts. An n-gram of letter indices is packed into a single table index
+ * as a base 26 number, first letter most significant. N-grams that were
+ * never seen score a floor value rather than minus infinity.
+ *
+ * The table can be loaded from a counts file, with one "NGRAM count" entry
+ * per line, or counted directly from a corpus of text. It can also be one
+ * of the tables of a memory-mapped NGramModel, so the scores are held in a
+ * FloatBuffer that either wraps an array or views the mapped file.
+ */
+package phillockett65.Enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class NGramTable {
+
+    public final static int MIN_LENGTH = 1;
+    public final static int MAX_LENGTH = 5;
+
+    private final int length;
+    private final int size;
+    private final FloatBuffer scores;
+    private final float floor;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param length of the n-grams.
+     * @param counts of each n-gram, indexed by the packed n-gram.
+     */
+    private NGramTable(int length, long[] counts) {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+
+        if (total == 0)
+            throw new IllegalArgumentException("No n-grams found");
+
+        final float floor = (float)Math.log10(0.01 / total);
+        final float[] scores = new float[counts.length];
+        for (int i = 0; i < counts.length; ++i)
+            scores[i] = (counts[i] == 0) ? floor : (float)Math.log10((double)counts[i] / total);
+
+        this.length = length;
+        this.size = counts.length;
+        this.scores = FloatBuffer.wrap(scores);
+        this.floor = floor;
+    }
+
+    /**
+     * Constructor used by NGramModel for a table that is already scored.
+     * @param length of the n-grams.
+     * @param scores of each n-gram, indexed by the packed n-gram.
+     * @param floor score of the n-grams that were never seen.
+     */
+    NGramTable(int length, FloatBuffer scores, float floor) {
+        this.length = checkLength(length);
+        this.size = size(length);
+        if (scores.capacity() != size)
+            throw new IllegalArgumentException("Expected " + size + " scores for n-grams of length " + length);
+
+        this.scores = scores;
+        this.floor = floor;
+    }
+
+    private static int checkLength(int length) {
+        if ((length < MIN_LENGTH) || (length > MAX_LENGTH))
+            throw new IllegalArgumentException("N-gram length must be " + MIN_LENGTH + " to " + MAX_LENGTH + ": " + length);
+
+        return length;
+    }
+
+    static int size(int length) {
+        int size = 1;
+        for (int i = 0; i < length; ++i)
+            size *= 26;
+
+        return size;
+    }
+
+    /**
+     * Count the n-grams of a corpus, ignoring anything but letters.
+     * @param text of the corpus.
+     * @param length of the n-grams.
+     * @return the new NGramTable.
+     */
+    public static NGramTable fromText(CharSequence text, int length) {
+        final int size = size(checkLength(length));
+        final long[] counts = new long[size];
+
+        int index = 0;
+        int letters = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            final int letter = Mapper.charToIndex(text.charAt(i));
+            if ((letter < 0) || (letter >= 26))
+                continue;
+
+            index = (index * 26 + letter) % size;
+            if (++letters >= length)
+                counts[index]++;
+        }
+
+        return new NGramTable(length, counts);
+    }
+
+    /**
+     * Load the n-gram counts from a file of "NGRAM count" lines. All the
+     * n-grams must be the same length.
+     * @param path of the counts file.
+     * @return the new NGramTable.
+     */
+    public static NGramTable load(Path path) throws IOException {
+        long[] counts = null;
+        int length = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] tokens = line.trim().split("\\s+");
+                if (tokens[0].isEmpty())
+                    continue;
+
+                if (tokens.length != 2 || !tokens[0].matches("[A-Za-z]+"))
+                    throw new IllegalArgumentException("Invalid n-gram line: " + line);
+
+                if (counts == null) {
+                    length = checkLength(tokens[0].length());
+                    counts = new long[size(length)];
+                } else if (tokens[0].length() != length) {
+                    throw new IllegalArgumentException("Mixed n-gram lengths: " + line);
+                }
+
+                counts[index(tokens[0])] += Long.parseLong(tokens[1]);
+            }
+        }
+
+        if (counts == null)
+            throw new IllegalArgumentException("No n-grams found in " + path);
+
+        return new NGramTable(length, counts);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getLength() { return length; }
+    public float getFloor() { return floor; }
+
+    /**
+     * @param index of the packed n-gram.
+     * @return the log10 probability of the n-gram.
+     */
+    public float score(int index) { return scores.get(index); }
+
+    /**
+     * @return a read only view of the scores, indexed by the packed n-gram.
+     */
+    FloatBuffer getScores() { return scores.asReadOnlyBuffer(); }
+
+    /**
+     * Pack the n-gram starting at a position of an array of letter indices.
+     * @param letters array of letter indices.
+     * @param from position of the first letter of the n-gram.
+     * @return the packed n-gram.
+     */
+    public int index(byte[] letters, int from) {
+        int index = 0;
+        for (int i = from; i < from + length; ++i)
+            index = index * 26 + letters[i];
+
+        return index;
+    }
+
+    private static int index(String ngram) {
+        int index = 0;
+        for (int i = 0; i < ngram.length(); ++i)
+            index = index * 26 + Mapper.charToIndex(ngram.charAt(i));
+
+        return index;
+    }
+
+    /**
+     * Score every n-gram of an array of letter indices, as given by 
+     * Mapper.charToIndex().
+     * @param letters array of letter indices.
+     * @param count of letters to score.
+     * @return the sum of the log10 probabilities.
+     */
+    public double score(byte[] letters, int count) {
+        if (count < length)
+            return 0;
+
+        // Roll the index along, dropping the oldest letter each time.
+        final int oldest = size / 26;
+        int index = index(letters, 0);
+        double total = scores.get(index);
+        for (int i = length; i < count; ++i) {
+            index = (index - letters[i - length] * oldest) * 26 + letters[i];
+            total += scores.get(index);
+        }
+
+        return total;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ParallelTranslator is a class that translates large buffers by splitting
+ * them into chunks and translating the chunks concurrently on a ForkJoinPool.
+ * Stepping is deterministic, so the starting position of each chunk is found
+ * by counting the letters before it and seeking a copy of the machine. The
+ * output is identical to translating the whole buffer with the machine and
+ * the machine is left in the same state. A machine that shows its steps is
+ * always used directly so that the steps are traced in order.
+ */
+package phillockett65.Enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class ParallelTranslator {
+
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    private static boolean isLetter(int c) {
+        final int index = (c | 0x20) - 'a';
+
+        return index >= 0 && index < 26;
+    }
+
+    private static long countLetters(byte[] buffer, int off, int len) {
+        long count = 0;
+        for (int i = off; i < off + len; ++i)
+            if (isLetter(buffer[i]))
+                count++;
+
+        return count;
+    }
+
+    private static long countLetters(char[] buffer, int off, int len) {
+        long count = 0;
+        for (int i = off; i < off + len; ++i)
+            if (isLetter(buffer[i]))
+                count++;
+
+        return count;
+    }
+
+    private static int chunkCount(int len) { return (len + CHUNK_SIZE - 1) / CHUNK_SIZE; }
+    private static int chunkLength(int chunk, int len) { return Math.min(CHUNK_SIZE, len - chunk * CHUNK_SIZE); }
+
+    /**
+     * Convert the letter counts of each chunk into the number of key presses
+     * before each chunk.
+     * @param starts letter count of chunk i in starts[i + 1], updated in
+     * place.
+     */
+    private static void accumulate(long[] starts) {
+        for (int i = 1; i < starts.length; ++i)
+            starts[i] += starts[i - 1];
+    }
+
+
+    /**
+     * ChunkTask is a class that recursively splits a range of chunks until
+     * each task handles a single chunk.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int low;
+        private final int high;
+        private final IntConsumer action;
+
+        public ChunkTask(int low, int high, IntConsumer action) {
+            this.low = low;
+            this.high = high;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low == 1) {
+                action.accept(low);
+                return;
+            }
+
+            final int mid = (low + high) >>> 1;
+            invokeAll(new ChunkTask(low, mid, action), new ChunkTask(mid, high, action));
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Translate a buffer of ASCII bytes concurrently. Equivalent to
+     * machine.translate(src, off, len, dst).
+     * @param pool to run the translation on.
+     * @param machine to translate with, left positioned after the buffer.
+     * @param src buffer of ASCII bytes to translate.
+     * @param off offset of the first byte in both buffers.
+     * @param len number of bytes to translate.
+     * @param dst buffer to receive the translated bytes.
+     */
+    public static void translate(ForkJoinPool pool, EnigmaMachine machine, byte[] src, int off, int len, byte[] dst) {
+        if ((len <= CHUNK_SIZE) || (machine.isShow())) {
+            machine.translate(src, off, len, dst);
+            return;
+        }
+
+        final int count = chunkCount(len);
+        final long[] starts = new long[count + 1];
+        pool.invoke(new ChunkTask(0, count, chunk ->
+            starts[chunk + 1] = countLetters(src, off + chunk * CHUNK_SIZE, chunkLength(chunk, len))));
+        accumulate(starts);
+
+        // Build the stepping cycle once so that all the copies share it.
+        machine.seek(0);
+
+        pool.invoke(new ChunkTask(0, count, chunk -> {
+            EnigmaMachine copy = new EnigmaMachine(machine);
+            copy.seek(starts[chunk]);
+            copy.translate(src, off + chunk * CHUNK_SIZE, chunkLength(chunk, len), dst);
+        }));
+
+        machine.seek(starts[count]);
+    }
+
+    /**
+     * Translate a buffer of characters concurrently. Equivalent to
+     * machine.translate(src, off, len, dst).
+     * @param pool to run the translation on.
+     * @param machine to translate with, left positioned after the buffer.
+     * @param src buffer of characters to translate.
+     * @param off offset of the first character in both buffers.
+     * @param len number of characters to translate.
+     * @param dst buffer to receive the translated characters.
+     */
+    public static void translate(ForkJoinPool pool, EnigmaMachine machine, char[] src, int off, int len, char[] dst) {
+        if ((len <= CHUNK_SIZE) || (machine.isShow())) {
+            machine.translate(src, off, len, dst);
+            return;
+        }
+
+        final int count = chunkCount(len);
+        final long[] starts = new long[count + 1];
+        pool.invoke(new ChunkTask(0, count, chunk ->
+            starts[chunk + 1] = countLetters(src, off + chunk * CHUNK_SIZE, chunkLength(chunk, len))));
+        accumulate(starts);
+
+        // Build the stepping cycle once so that all the copies share it.
+        machine.seek(0);
+
+        pool.invoke(new ChunkTask(0, count, chunk -> {
+            EnigmaMachine copy = new EnigmaMachine(machine);
+            copy.seek(starts[chunk]);
+            copy.translate(src, off + chunk * CHUNK_SIZE, chunkLength(chunk, len), dst);
+        }));
+
+        machine.seek(starts[count]);
+    }
+
+    public static void translate(EnigmaMachine machine, byte[] src, int off, int len, byte[] dst) {
+        translate(ForkJoinPool.commonPool(), machine, src, off, len, dst);
+    }
+
+    public static void translate(EnigmaMachine machine, char[] src, int off, int len, char[] dst) {
+        translate(ForkJoinPool.commonPool(), machine, src, off, len, dst);
+    }
+
+}
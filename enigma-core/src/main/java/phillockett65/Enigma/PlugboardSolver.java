@@ -0,0 +1,505 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PlugboardSolver is a class that recovers the plugboard once the rotor
+ * settings are known. Starting from a random plugboard, changes to the pairs
+ * are proposed and kept if they improve the n-gram score of the decrypt
+ * (hill-climbing), or with a probability that falls as the temperature is
+ * lowered (simulated annealing). Several restarts are run in parallel and
+ * the best plugboard found is returned as pair text.
+ *
+ * The scrambler (the machine without plugboard) for each key press is built
+ * once. Each letter of the decrypt is then plugboard(scrambler(plugboard(c)))
+ * so a change to the plugboard only affects the key presses where either the
+ * ciphertext letter or the scrambler output is one of the changed letters.
+ * Only those letters and the n-grams that include them are rescored.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class PlugboardSolver {
+
+    private final NGramTable ngrams;
+    private int restarts = 20;
+    private int iterations = 20000;
+    private double temperature = 2.0;
+    private int maxPlugs = MachineSettings.PLUG_COUNT;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = System.nanoTime();
+
+    // The message.
+    private byte[] ciphertext;
+    private byte[] scramblers;
+    private int[][] byCipher;
+
+
+    /************************************************************************
+     * Solution is a class that captures the best plugboard found.
+     */
+    public static class Solution {
+        private final int[] plugboard;
+        private final double score;
+        private final String plaintext;
+
+        public Solution(int[] plugboard, double score, String plaintext) {
+            this.plugboard = plugboard;
+            this.score = score;
+            this.plaintext = plaintext;
+        }
+
+        public int[] getPlugboard() { return plugboard.clone(); }
+        public double getScore() { return score; }
+        public String getPlaintext() { return plaintext; }
+
+        /**
+         * @return the plugboard as a list of Pairs.
+         */
+        public List<Pair> getPairs() {
+            ArrayList<Pair> pairs = new ArrayList<Pair>();
+            for (int i = 0; i < 26; ++i)
+                if (plugboard[i] > i) {
+                    Pair pair = new Pair();
+                    pair.set(Mapper.indexToString(i) + Mapper.indexToString(plugboard[i]));
+                    pairs.add(pair);
+                }
+
+            return pairs;
+        }
+
+        /**
+         * @return the plugboard as pair text such as "AB CD EF".
+         */
+        public String getPlugs() {
+            StringBuilder builder = new StringBuilder();
+            for (Pair pair : getPairs()) {
+                if (builder.length() != 0)
+                    builder.append(' ');
+                builder.append(pair.get());
+            }
+
+            return builder.toString();
+        }
+    }
+
+
+
+    /************************************************************************
+     * Climber is a class that captures the working state of one restart. It
+     * is owned by a single worker thread and reused for each restart.
+     */
+    private class Climber {
+        private final int length = ciphertext.length;
+        private final int windowCount = length - ngrams.getLength() + 1;
+
+        // Current state.
+        private final int[] plugs = new int[26];
+        private final byte[] mids = new byte[length];
+        private final byte[] plain = new byte[length];
+        private final float[] windows = new float[windowCount];
+        private double score;
+
+        // Key presses grouped by the current scrambler output letter.
+        private final int[][] buckets = new int[26][length];
+        private final int[] bucketSizes = new int[26];
+        private final int[] slots = new int[length];
+
+        // Working storage for a proposal.
+        private final int[] trial = new int[26];
+        private final int[] changed = new int[26];
+        private final int[] dirty = new int[length];
+        private int dirtyCount;
+        private final byte[] newMids = new byte[length];
+        private final byte[] oldPlain = new byte[length];
+        private final int[] touched = new int[windowCount];
+        private int touchedCount;
+        private final float[] newWindows = new float[windowCount];
+        private final int[] dirtyStamps = new int[length];
+        private final int[] windowStamps = new int[windowCount];
+        private int generation = 0;
+
+        // Best state of this restart.
+        private final int[] bestPlugs = new int[26];
+        private double bestScore;
+
+        /**
+         * Decipher the whole message with a new plugboard.
+         * @param start plugboard map.
+         */
+        private void reset(int[] start) {
+            System.arraycopy(start, 0, plugs, 0, 26);
+            Arrays.fill(bucketSizes, 0);
+
+            for (int i = 0; i < length; ++i) {
+                final int mid = scramblers[i * 26 + plugs[ciphertext[i]]];
+                mids[i] = (byte)mid;
+                plain[i] = (byte)plugs[mid];
+                slots[i] = bucketSizes[mid];
+                buckets[mid][bucketSizes[mid]++] = i;
+            }
+
+            score = 0;
+            for (int j = 0; j < windowCount; ++j) {
+                windows[j] = ngrams.score(ngrams.index(plain, j));
+                score += windows[j];
+            }
+
+            System.arraycopy(plugs, 0, bestPlugs, 0, 26);
+            bestScore = score;
+        }
+
+        private void mark(int i) {
+            if (dirtyStamps[i] != generation) {
+                dirtyStamps[i] = generation;
+                dirty[dirtyCount++] = i;
+            }
+        }
+
+        /**
+         * Build a trial plugboard by connecting a random pair of letters,
+         * or disconnecting them if they are already connected.
+         * @param random number generator.
+         * @return the number of changed letters, 0 if the trial is rejected.
+         */
+        private int propose(SplittableRandom random) {
+            final int a = random.nextInt(26);
+            int b = random.nextInt(25);
+            if (b >= a)
+                b++;
+
+            System.arraycopy(plugs, 0, trial, 0, 26);
+
+            final int oldA = plugs[a];
+            final int oldB = plugs[b];
+            if (oldA == b) {
+                trial[a] = a;
+                trial[b] = b;
+            } else {
+                trial[oldA] = oldA;
+                trial[oldB] = oldB;
+                trial[a] = b;
+                trial[b] = a;
+
+                // Optionally connect the old partners to each other.
+                if ((oldA != a) && (oldB != b) && random.nextBoolean()) {
+                    trial[oldA] = oldB;
+                    trial[oldB] = oldA;
+                }
+
+                if (countPairs(trial) > maxPlugs)
+                    return 0;
+            }
+
+            int count = 0;
+            for (int x = 0; x < 26; ++x)
+                if (trial[x] != plugs[x])
+                    changed[count++] = x;
+
+            return count;
+        }
+
+        /**
+         * Rescore the key presses affected by the trial plugboard. The plain
+         * text is updated in place and must be accepted or rejected.
+         * @param count of changed letters.
+         * @return the change in score.
+         */
+        private double rescore(int count) {
+            generation++;
+            dirtyCount = 0;
+
+            for (int c = 0; c < count; ++c) {
+                final int letter = changed[c];
+                for (int i : byCipher[letter])
+                    mark(i);
+
+                final int[] bucket = buckets[letter];
+                for (int k = 0; k < bucketSizes[letter]; ++k)
+                    mark(bucket[k]);
+            }
+
+            final int n = ngrams.getLength();
+            touchedCount = 0;
+            for (int d = 0; d < dirtyCount; ++d) {
+                final int i = dirty[d];
+                final int mid = scramblers[i * 26 + trial[ciphertext[i]]];
+                newMids[d] = (byte)mid;
+                oldPlain[d] = plain[i];
+                plain[i] = (byte)trial[mid];
+
+                final int last = Math.min(i, windowCount - 1);
+                for (int j = Math.max(0, i - n + 1); j <= last; ++j)
+                    if (windowStamps[j] != generation) {
+                        windowStamps[j] = generation;
+                        touched[touchedCount++] = j;
+                    }
+            }
+
+            double delta = 0;
+            for (int w = 0; w < touchedCount; ++w) {
+                final int j = touched[w];
+                newWindows[w] = ngrams.score(ngrams.index(plain, j));
+                delta += newWindows[w] - windows[j];
+            }
+
+            return delta;
+        }
+
+        /**
+         * Keep the trial plugboard.
+         * @param count of changed letters.
+         * @param delta change in score.
+         */
+        private void accept(int count, double delta) {
+            for (int w = 0; w < touchedCount; ++w)
+                windows[touched[w]] = newWindows[w];
+
+            for (int d = 0; d < dirtyCount; ++d) {
+                final int i = dirty[d];
+                final int oldMid = mids[i];
+                final int newMid = newMids[d];
+                if (oldMid == newMid)
+                    continue;
+
+                // Move the key press to the bucket of the new output letter.
+                final int moved = buckets[oldMid][--bucketSizes[oldMid]];
+                buckets[oldMid][slots[i]] = moved;
+                slots[moved] = slots[i];
+
+                slots[i] = bucketSizes[newMid];
+                buckets[newMid][bucketSizes[newMid]++] = i;
+                mids[i] = (byte)newMid;
+            }
+
+            for (int c = 0; c < count; ++c)
+                plugs[changed[c]] = trial[changed[c]];
+
+            score += delta;
+            if (score > bestScore) {
+                bestScore = score;
+                System.arraycopy(plugs, 0, bestPlugs, 0, 26);
+            }
+        }
+
+        /**
+         * Discard the trial plugboard.
+         */
+        private void reject() {
+            for (int d = 0; d < dirtyCount; ++d)
+                plain[dirty[d]] = oldPlain[d];
+        }
+
+        /**
+         * Run one restart from a random plugboard.
+         * @param random number generator.
+         */
+        private void climb(SplittableRandom random) {
+            reset(randomPlugboard(random));
+
+            for (int iteration = 0; iteration < iterations; ++iteration) {
+                final int count = propose(random);
+                if (count == 0)
+                    continue;
+
+                final double delta = rescore(count);
+                final double t = temperature * (iterations - iteration) / iterations;
+                if ((delta >= 0) || ((t > 0) && (random.nextDouble() < Math.exp(delta / t))))
+                    accept(count, delta);
+                else
+                    reject();
+            }
+        }
+    }
+
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param ngrams table used to score the decrypts.
+     */
+    public PlugboardSolver(NGramTable ngrams) {
+        this.ngrams = ngrams;
+    }
+
+    public void setRestarts(int count) { restarts = count; }
+    public void setIterations(int count) { iterations = count; }
+    public void setTemperature(double value) { temperature = value; }
+    public void setMaxPlugs(int count) { maxPlugs = count; }
+    public void setThreads(int count) { threads = count; }
+    public void setSeed(long value) { seed = value; }
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    private static int countPairs(int[] plugboard) {
+        int count = 0;
+        for (int i = 0; i < 26; ++i)
+            if (plugboard[i] > i)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Build a random plugboard of up to maxPlugs pairs.
+     * @param random number generator.
+     * @return the plugboard map.
+     */
+    private int[] randomPlugboard(SplittableRandom random) {
+        int[] letters = new int[26];
+        for (int i = 0; i < 26; ++i)
+            letters[i] = i;
+
+        for (int i = 25; i > 0; --i) {
+            final int j = random.nextInt(i + 1);
+            final int swap = letters[i];
+            letters[i] = letters[j];
+            letters[j] = swap;
+        }
+
+        int[] plugboard = new int[26];
+        for (int i = 0; i < 26; ++i)
+            plugboard[i] = i;
+
+        final int count = random.nextInt(maxPlugs + 1);
+        for (int p = 0; p < count; ++p) {
+            plugboard[letters[2 * p]] = letters[2 * p + 1];
+            plugboard[letters[2 * p + 1]] = letters[2 * p];
+        }
+
+        return plugboard;
+    }
+
+    /**
+     * Build the scrambler for each key press of the message, as the output
+     * letter for every input letter.
+     * @param machine with the rotor settings at the start of the message.
+     */
+    private void buildScramblers(EnigmaMachine machine) {
+        final int length = ciphertext.length;
+        scramblers = new byte[length * 26];
+
+        int[] identity = new int[26];
+        for (int i = 0; i < 26; ++i)
+            identity[i] = i;
+
+        for (int x = 0; x < 26; ++x) {
+            EnigmaMachine copy = new EnigmaMachine(machine);
+            copy.setPlugboard(identity);
+            copy.setShow(false);
+
+            for (int i = 0; i < length; ++i)
+                scramblers[i * 26 + x] = (byte)copy.translate(x);
+        }
+
+        int[] counts = new int[26];
+        for (byte letter : ciphertext)
+            counts[letter]++;
+
+        byCipher = new int[26][];
+        for (int x = 0; x < 26; ++x)
+            byCipher[x] = new int[counts[x]];
+
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < length; ++i)
+            byCipher[ciphertext[i]][counts[ciphertext[i]]++] = i;
+    }
+
+    /**
+     * Decipher the message with a plugboard.
+     * @param plugboard map.
+     * @return the plaintext.
+     */
+    private String decipher(int[] plugboard) {
+        StringBuilder builder = new StringBuilder(ciphertext.length);
+        for (int i = 0; i < ciphertext.length; ++i) {
+            final int mid = scramblers[i * 26 + plugboard[ciphertext[i]]];
+            builder.append((char)Mapper.indexToChar(plugboard[mid]));
+        }
+
+        return builder.toString();
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Recover the plugboard for a message.
+     * @param machine with the rotor settings at the start of the message,
+     * its plugboard is ignored and it is not changed.
+     * @param text of the ciphertext, non-letters are ignored.
+     * @return the best Solution found.
+     */
+    public Solution run(EnigmaMachine machine, String text) throws InterruptedException {
+        final String letters = text.replaceAll("[^A-Za-z]", "");
+        if (letters.length() < ngrams.getLength())
+            throw new IllegalArgumentException("Ciphertext is shorter than an n-gram");
+
+        if ((maxPlugs < 0) || (maxPlugs > MachineSettings.PLUG_COUNT))
+            throw new IllegalArgumentException("Plugboard pairs must be 0 to " + MachineSettings.PLUG_COUNT + ": " + maxPlugs);
+
+        ciphertext = new byte[letters.length()];
+        for (int i = 0; i < ciphertext.length; ++i)
+            ciphertext[i] = (byte)Mapper.charToIndex(letters.charAt(i));
+
+        buildScramblers(machine);
+
+        final int[][] bestPlugs = new int[threads][];
+        final double[] bestScores = new double[threads];
+        Arrays.fill(bestScores, Double.NEGATIVE_INFINITY);
+
+        Workers.run("PlugboardSolver", threads, restarts, worker -> {
+            final Climber climber = new Climber();
+
+            return r -> {
+                climber.climb(new SplittableRandom(seed + r * 0x9E3779B97F4A7C15L));
+                if (climber.bestScore > bestScores[worker]) {
+                    bestScores[worker] = climber.bestScore;
+                    bestPlugs[worker] = climber.bestPlugs.clone();
+                }
+            };
+        });
+
+        int best = -1;
+        for (int t = 0; t < threads; ++t)
+            if ((bestPlugs[t] != null) && ((best == -1) || (bestScores[t] > bestScores[best])))
+                best = t;
+
+        if (best == -1)
+            throw new IllegalArgumentException("No restarts to run");
+
+        final int[] plugboard = bestPlugs[best];
+
+        return new Solution(plugboard, bestScores[best], decipher(plugboard));
+    }
+
+}
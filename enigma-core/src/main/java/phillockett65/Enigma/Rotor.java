@@ -19,9 +19,11 @@
  */
 
 /*
- * Rotor is a class that extends Mapper and captures the details of a rotor 
- * including the ring setting which is set post instantiation and the rotation
- * (offset) which is dynamically updated in normal use. Note, the turnover point
+ * Rotor is a class that extends Mapper and captures the immutable details of 
+ * a rotor. The right and left mappings for all 26 ring settings are built 
+ * once on instantiation, so a single Rotor can be shared by any number of 
+ * machines on any number of threads. The ring setting and the rotation 
+ * (offset) in use are held by each EnigmaMachine. Note, the turnover point 
  * immediately follows the notch point.
  */
 package phillockett65.Enigma;
@@ -34,10 +36,9 @@ public class Rotor extends Mapper {
     private final String name;
     private final boolean[] turnover;
     private final boolean[] notches;
-    
-    private int ringSetting;
 
-    private int offset;
+    private final int[][] rightMaps = new int[26][26];
+    private final int[][] leftMaps = new int[26][26];
 
 
     /************************************************************************
@@ -97,6 +98,22 @@ public class Rotor extends Mapper {
         return turing;
     }
 
+    /**
+     * Build the right and left mappings of a rotor wiring for a given ring 
+     * setting. The left mapping is the inverse of the right mapping.
+     * @param map of the rotor wiring.
+     * @param index of the required ring setting.
+     * @param right mapping to be filled in.
+     * @param left mapping to be filled in.
+     */
+    private static void buildRingMaps(int[] map, int index, int[] right, int[] left) {
+        for (int i = 0; i < map.length; ++i)
+            right[(i + index) % 26] = (map[i] + index) % 26;
+
+        for (int i = 0; i < map.length; ++i)
+            left[right[i]] = i;
+    }
+
     /**
      * Constructor.
      * @param id of this mapping.
@@ -113,7 +130,8 @@ public class Rotor extends Mapper {
         this.turnover = buildTurnover(turnover);
         this.notches = buildNotches();
 
-        offset = 0;
+        for (int i = 0; i < 26; ++i)
+            buildRingMaps(map, i, rightMaps[i], leftMaps[i]);
     }
 
 
@@ -127,57 +145,40 @@ public class Rotor extends Mapper {
     public boolean isTurnoverPoint(int index) { return turnover[index]; }
     public boolean isNotchPoint(int index) { return notches[index]; }
 
-    public int getRingSetting()	{ return ringSetting; }
+    public boolean[] getTurnovers() { return turnover.clone(); }
+    public boolean[] getNotches() { return notches.clone(); }
+    public int[] getRightMap(int ringSetting) { return rightMaps[ringSetting].clone(); }
+    public int[] getLeftMap(int ringSetting) { return leftMaps[ringSetting].clone(); }
 
-    public int getOffset() { return offset; }
+    /*
+     * The following return the arrays shared by every machine using this 
+     * Rotor, for the machine's hot path, and must not be modified.
+     */
+    boolean[] sharedTurnovers() { return turnover; }
+    boolean[] sharedNotches() { return notches; }
+    int[] sharedRightMap(int ringSetting) { return rightMaps[ringSetting]; }
+    int[] sharedLeftMap(int ringSetting) { return leftMaps[ringSetting]; }
 
 
     /************************************************************************
-     * Setters support code.
+     * Support code for translation.
      */
 
-    public void setOffset(int value) { offset = value; }
-
     /**
      * Translates (swaps) an index (numerical equivalent of the letter) to 
-     * another using the map.
+     * another using the map for a ring setting and offset. The Rotor is not 
+     * changed, so this is safe to call from any thread.
      * @param direction of mapping. Eg A may map to J, but J may not map to A.
+     * @param ringSetting of the rotor.
+     * @param offset of the rotor.
      * @param index to translate.
-     * @param show the translation step on the command line.
      * @return the translated index.
      */
-    public int swap(int direction, int index, boolean show) {
-        int shift = (index + offset) % 26;
-
-        int output = (direction == RIGHT_TO_LEFT) ? rightToLeft(shift) : leftToRight(shift);
-        output = (output + 26 - offset) % 26;
-
-        if (show)
-            System.out.print(id + "[" + Rotor.indexToString(offset) + "](" + Rotor.indexToString(index) + "->" + Rotor.indexToString(output) + ")  ");
-
-        return output;
-    }
-
-    /**
-     * Set the ring setting and update the left and right mappings using the
-     * map and ring setting.
-     * @param index of the required ring setting.
-     */
-    public void setRingSetting(int index) {
-        // System.out.println("setRingSetting(" + index + ")");
-
-        ringSetting = index;
-
-        for (int i = 0; i < map.length; ++i)
-            rightMap[(i + index) % 26] = (map[i] + index) % 26;
-
-        for (int i = 0; i < map.length; ++i)
-            leftMap[rightMap[i]] = i;
+    public int swap(int direction, int ringSetting, int offset, int index) {
+        final int shift = (index + offset) % 26;
 
-        // System.out.print("rightMap = ");
-        // dumpRightMap();
-        // System.out.print("leftMap  = ");
-        // dumpLeftMap();
+        final int output = (direction == RIGHT_TO_LEFT) ? rightMaps[ringSetting][shift] : leftMaps[ringSetting][shift];
+        return (output + 26 - offset) % 26;
     }
 
 
@@ -193,7 +194,6 @@ public class Rotor extends Mapper {
             // ", cipher=" + cipher + 
             ", name=" + name + 
             ", reflect=" + reflect + 
-            ", offset=" + offset + 
             // ", date=" + date + 
             "]";
     }
@@ -0,0 +1,234 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RotorRegistry is a class that captures the catalog of Rotor definitions
+ * independently of the GUI. It holds the Rotors grouped by machine and the
+ * lists of selectable rotors and reflectors, plus lookups by id.
+ *
+ * Each selectable rotor and reflector also has a dense integer handle (its
+ * index in the selectable list), so an id can be resolved once and the
+ * Rotor then fetched by array index.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+public class RotorRegistry {
+
+    private final List<Rotor> commercial = new ArrayList<Rotor>();
+    private final List<Rotor> rocket = new ArrayList<Rotor>();
+    private final List<Rotor> swissK = new ArrayList<Rotor>();
+    private final List<Rotor> m3 = new ArrayList<Rotor>();
+    private final List<Rotor> m4 = new ArrayList<Rotor>();
+
+    private final List<Rotor> rotors = new ArrayList<Rotor>();
+    private final List<Rotor> reflectors = new ArrayList<Rotor>();
+
+    public static final int NONE = -1;
+
+    private Rotor[] rotorTable;
+    private Rotor[] reflectorTable;
+
+    private final HashMap<String, Integer> rotorHandles = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> reflectorHandles = new HashMap<String, Integer>();
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     */
+    public RotorRegistry() {
+        initRotorWiring();
+    }
+
+    /**
+     * Construct all the Rotor collections.
+     *
+     * Note: for the commercial, rocket and swissK Rotors, the turnover points
+     * are guesses and may be incorrect.
+     */
+    private void initRotorWiring() {
+
+        commercial.add(new Rotor("IC",	"DMTWSILRUYQNKFEJCAZBPGXOHV",	"1924",	"Commercial Enigma A, B", "R"));
+        commercial.add(new Rotor("IIC",	"HQZGPJTMOBLNCIFDYAWVEUSRKX",	"1924",	"Commercial Enigma A, B", "F"));
+        commercial.add(new Rotor("IIIC","UQNTLSZFMREHDPXKIBVYGJCWOA",	"1924",	"Commercial Enigma A, B", "W"));
+
+        rocket.add(new Rotor("I-R", 	"JGDQOXUSCAMIFRVTPNEWKBLZYH",	"7 February 1941",	"German Railway (Rocket)", "R"));
+        rocket.add(new Rotor("II-R",	"NTZPSFBOKMWRCJDIVLAEYUXHGQ",	"7 February 1941",	"German Railway (Rocket)", "F"));
+        rocket.add(new Rotor("III-R",	"JVIUBHTCDYAKEQZPOSGXNRMWFL",	"7 February 1941",	"German Railway (Rocket)", "W"));
+        rocket.add(new Rotor("UKW-R",	"QYHOGNECVPUZTFDJAXWMKISRBL",	"7 February 1941",	"German Railway (Rocket)", ""));
+        rocket.add(new Rotor("ETW-R",	"QWERTZUIOASDFGHJKPYXCVBNML",	"7 February 1941",	"German Railway (Rocket)", ""));
+
+        swissK.add(new Rotor("I-K",		"PEZUOHXSCVFMTBGLRINQJWAYDK",	"February 1939",	"Swiss K", "R"));
+        swissK.add(new Rotor("II-K",	"ZOUESYDKFWPCIQXHMVBLGNJRAT",	"February 1939",	"Swiss K", "F"));
+        swissK.add(new Rotor("III-K",	"EHRVXGAOBQUSIMZFLYNWKTPDJC",	"February 1939",	"Swiss K", "W"));
+        swissK.add(new Rotor("UKW-K",	"IMETCGFRAYSQBZXWLHKDVUPOJN",	"February 1939",	"Swiss K", ""));
+        swissK.add(new Rotor("ETW-K",	"QWERTZUIOASDFGHJKPYXCVBNML",	"February 1939",	"Swiss K", ""));
+
+        m3.add(new Rotor("I",		"EKMFLGDQVZNTOWYHXUSPAIBRCJ",	"1930",	"Enigma I", "R"));
+        m3.add(new Rotor("II",		"AJDKSIRUXBLHWTMCQGZNPYFVOE",	"1930",	"Enigma I", "F"));
+        m3.add(new Rotor("III",		"BDFHJLCPRTXVZNYEIWGAKMUSQO",	"1930",	"Enigma I", "W"));
+        m3.add(new Rotor("IV",		"ESOVPZJAYQUIRHXLNFTGKDCMWB",	"December 1938",	"M3 Army", "K"));
+        m3.add(new Rotor("V",		"VZBRGITYUPSDNHLXAWMJQOFECK",	"December 1938",	"M3 Army", "A"));
+        m3.add(new Rotor("VI",		"JPGVOUMFYQBENHZRDKASXLICTW",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
+        m3.add(new Rotor("VII",		"NZJHGRCXMYSWBOUFAIVLPEKQDT",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
+        m3.add(new Rotor("VIII",	"FKQHTLXOCBJSPDZRAMEWNIUYGV",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
+
+        m4.add(new Rotor("Beta",				"LEYJVCNIXWPBQMDRTAKZGFUHOS",	"Spring 1941",	"M4 R2", ""));
+        m4.add(new Rotor("Gamma",				"FSOKANUERHMBTIYCWLQPZXVGJD",	"Spring 1942",	"M4 R2", ""));
+        m4.add(new Rotor("Reflector A",			"EJMZALYXVBWFCRQUONTSPIKHGD",	"",	"", ""));
+        m4.add(new Rotor("Reflector B",			"YRUHQSLDPXNGOKMIEBFZCWVJAT",	"",	"", ""));
+        m4.add(new Rotor("Reflector C",			"FVPJIAOYEDRZXWGCTKUQSBNMHL",	"",	"", ""));
+        m4.add(new Rotor("Reflector B Thin",	"ENKQAUYWJICOPBLMDXZVFTHRGS",	"1940",	"M4 R1 (M3 + Thin)", ""));
+        m4.add(new Rotor("Reflector C Thin",	"RDOBJNTKVEHMLFCWZAXGYIPSUQ",	"1940",	"M4 R1 (M3 + Thin)", ""));
+        m4.add(new Rotor("ETW",					"ABCDEFGHIJKLMNOPQRSTUVWXYZ",	"",	"Enigma I", ""));
+
+        // Build list of rotors and list of reflectors that can be selected.
+        for (Rotor rotor : m3)
+            if (!rotor.isReflector())
+                rotors.add(rotor);
+
+        for (Rotor rotor : m4)
+            if (!rotor.isReflector())
+                rotors.add(rotor);
+            else
+                reflectors.add(rotor);
+
+        for (Rotor rotor : rocket)
+            if (!rotor.isReflector())
+                rotors.add(rotor);
+            else
+                reflectors.add(rotor);
+
+        for (Rotor rotor : swissK)
+            if (!rotor.isReflector())
+                rotors.add(rotor);
+            else
+                reflectors.add(rotor);
+
+        for (Rotor rotor : commercial)
+            if (!rotor.isReflector())
+                rotors.add(rotor);
+
+        rotorTable = rotors.toArray(new Rotor[rotors.size()]);
+        for (int i = 0; i < rotorTable.length; ++i)
+            rotorHandles.put(rotorTable[i].getId(), i);
+
+        reflectorTable = reflectors.toArray(new Rotor[reflectors.size()]);
+        for (int i = 0; i < reflectorTable.length; ++i)
+            reflectorHandles.put(reflectorTable[i].getId(), i);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public List<Rotor> getCommercial() { return Collections.unmodifiableList(commercial); }
+    public List<Rotor> getRocket() { return Collections.unmodifiableList(rocket); }
+    public List<Rotor> getSwissK() { return Collections.unmodifiableList(swissK); }
+    public List<Rotor> getM3() { return Collections.unmodifiableList(m3); }
+    public List<Rotor> getM4() { return Collections.unmodifiableList(m4); }
+
+    public List<Rotor> getRotors() { return Collections.unmodifiableList(rotors); }
+    public List<Rotor> getReflectors() { return Collections.unmodifiableList(reflectors); }
+
+    /**
+     * Build every wheel order of 3 different rotors for the left, middle and 
+     * right positions.
+     * @param ids of the rotors to choose from.
+     * @return list of wheel orders, each an array of 3 rotor ids.
+     */
+    public static List<String[]> getWheelOrders(List<String> ids) {
+        ArrayList<String[]> orders = new ArrayList<String[]>();
+        for (String left : ids)
+            for (String middle : ids)
+                for (String right : ids)
+                    if (!left.equals(middle) && !left.equals(right) && !middle.equals(right))
+                        orders.add(new String[] { left, middle, right });
+
+        return orders;
+    }
+
+    public int getRotorCount() { return rotorTable.length; }
+    public int getReflectorCount() { return reflectorTable.length; }
+
+    /**
+     * @param id of the required rotor.
+     * @return the handle of the selectable Rotor with the given id, NONE if 
+     * not found.
+     */
+    public int getRotorHandle(String id) {
+        final Integer handle = rotorHandles.get(id);
+
+        return (handle == null) ? NONE : handle;
+    }
+
+    /**
+     * @param id of the required reflector.
+     * @return the handle of the selectable reflector with the given id, NONE 
+     * if not found.
+     */
+    public int getReflectorHandle(String id) {
+        final Integer handle = reflectorHandles.get(id);
+
+        return (handle == null) ? NONE : handle;
+    }
+
+    /**
+     * @param handle of the required rotor, from getRotorHandle().
+     * @return the selectable Rotor.
+     */
+    public Rotor getRotor(int handle) { return rotorTable[handle]; }
+
+    /**
+     * @param handle of the required reflector, from getReflectorHandle().
+     * @return the selectable reflector.
+     */
+    public Rotor getReflector(int handle) { return reflectorTable[handle]; }
+
+    /**
+     * @param id of the required rotor.
+     * @return the selectable Rotor with the given id, null if not found.
+     */
+    public Rotor getRotor(String id) {
+        final int handle = getRotorHandle(id);
+
+        return (handle == NONE) ? null : rotorTable[handle];
+    }
+
+    /**
+     * @param id of the required reflector.
+     * @return the selectable reflector with the given id, null if not found.
+     */
+    public Rotor getReflector(String id) {
+        final int handle = getReflectorHandle(id);
+
+        return (handle == NONE) ? null : reflectorTable[handle];
+    }
+
+}
@@ -0,0 +1,451 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SettingsFile is a class that captures the saved settings and reads and
+ * writes them in a versioned, fixed layout binary format using NIO channels.
+ * It has no GUI dependencies. The format is:
+ *
+ *     magic       4 bytes  "ENIG"
+ *     version     2 bytes  currently 2
+ *     length      2 bytes  length of the payload
+ *     payload     length bytes, for version 1:
+ *         flags           1 byte   reconfigurable, fourthWheel, useLetters,
+ *                                  show and encipher as bits 0 to 4
+ *         reflector       16 bytes ASCII id, zero padded
+ *         pairs           12 x 2 bytes ASCII letters, zero padded
+ *         wheels          4 x 16 bytes ASCII ids, zero padded
+ *         ring settings   4 bytes
+ *         rotor offsets   4 bytes
+ *         plugs           13 x 2 bytes ASCII letters, zero padded
+ *     followed by, for version 2:
+ *         texts           (12 + 13) x 1 byte length then ASCII letters,
+ *                         the full text of each pair and then each plug
+ *     checksum    4 bytes  CRC32 of everything before it
+ *
+ * All numbers are big-endian. Readers ignore any payload beyond the fields
+ * they know, so later versions may only append fields. The pair and plug
+ * fields of version 1 only hold the first 2 letters of each text. Version 2
+ * appends the full texts, so a field that is still being edited is saved
+ * as the GUI holds it. The file is written
+ * to a temporary file first and then moved into place, so a crash never
+ * leaves a partly written settings file.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class SettingsFile {
+
+    public final static int MAGIC = 0x454E4947;    // "ENIG"
+    public final static short VERSION = 2;
+
+    public final static int PAIR_COUNT = MachineSettings.PAIR_COUNT;
+    public final static int PLUG_COUNT = MachineSettings.PLUG_COUNT;
+    public final static int ROTOR_COUNT = EnigmaMachine.ROTOR_COUNT;
+    public final static int MAX_TEXT_LENGTH = 255;
+
+    private final static int HEADER_SIZE = 8;
+    private final static int CHECKSUM_SIZE = 4;
+    private final static int ID_SIZE = 16;
+    private final static int PAIR_SIZE = 2;
+    private final static int PAYLOAD_SIZE = 1 + ID_SIZE + PAIR_COUNT * PAIR_SIZE +
+        ROTOR_COUNT * ID_SIZE + ROTOR_COUNT + ROTOR_COUNT + PLUG_COUNT * PAIR_SIZE;
+
+    private final static int RECONFIGURABLE = 0x01;
+    private final static int FOURTH_WHEEL = 0x02;
+    private final static int USE_LETTERS = 0x04;
+    private final static int SHOW = 0x08;
+    private final static int ENCIPHER = 0x10;
+
+    private String reflectorChoice = "Reflector B";
+    private boolean reconfigurable = false;
+    private final String[] pairs = new String[PAIR_COUNT];
+
+    private boolean fourthWheel = false;
+    private boolean useLetters = true;
+    private boolean show = false;
+
+    private final String[] wheels = { "Beta", "I", "II", "III" };
+    private final int[] ringSettings = new int[ROTOR_COUNT];
+    private final int[] rotorOffsets = new int[ROTOR_COUNT];
+
+    private final String[] plugs = new String[PLUG_COUNT];
+    private boolean encipher = false;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor. All settings have their default values.
+     */
+    public SettingsFile() {
+        for (int i = 0; i < PAIR_COUNT; ++i)
+            pairs[i] = "";
+
+        for (int i = 0; i < PLUG_COUNT; ++i)
+            plugs[i] = "";
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public String getReflectorChoice() { return reflectorChoice; }
+    public boolean isReconfigurable() { return reconfigurable; }
+    public String getPairText(int index) { return pairs[index]; }
+
+    public boolean isFourthWheel() { return fourthWheel; }
+    public boolean isUseLetters() { return useLetters; }
+    public boolean isShow() { return show; }
+
+    public String getWheelChoice(int index) { return wheels[index]; }
+    public int getRingIndex(int index) { return ringSettings[index]; }
+    public int getRotorIndex(int index) { return rotorOffsets[index]; }
+
+    public String getPlugText(int index) { return plugs[index]; }
+    public boolean isEncipher() { return encipher; }
+
+
+    /************************************************************************
+     * Setters support code.
+     */
+
+    public void setReflectorChoice(String choice) { reflectorChoice = checkId(choice); }
+    public void setReconfigurable(boolean state) { reconfigurable = state; }
+    public void setPairText(int index, String text) { pairs[index] = checkPair(text); }
+
+    public void setFourthWheel(boolean state) { fourthWheel = state; }
+    public void setUseLetters(boolean state) { useLetters = state; }
+    public void setShow(boolean state) { show = state; }
+
+    public void setWheelChoice(int index, String choice) { wheels[index] = checkId(choice); }
+    public void setRingIndex(int index, int value) { ringSettings[index] = checkIndex(value); }
+    public void setRotorIndex(int index, int value) { rotorOffsets[index] = checkIndex(value); }
+
+    public void setPlugText(int index, String text) { plugs[index] = checkPair(text); }
+    public void setEncipher(boolean state) { encipher = state; }
+
+
+    /************************************************************************
+     * Support code for field validation.
+     */
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); ++i)
+            if ((text.charAt(i) == 0) || (text.charAt(i) > 127))
+                return false;
+
+        return true;
+    }
+
+    private static String checkId(String id) {
+        if ((id == null) || (id.length() > ID_SIZE) || !isAscii(id))
+            throw new IllegalArgumentException("Invalid id: " + id);
+
+        return id;
+    }
+
+    private static String checkPair(String text) {
+        if ((text == null) || (text.length() > MAX_TEXT_LENGTH) || !isAscii(text))
+            throw new IllegalArgumentException("Invalid pair: " + text);
+
+        return text;
+    }
+
+    private static int checkIndex(int value) {
+        if ((value < 0) || (value >= 26))
+            throw new IllegalArgumentException("Invalid index: " + value);
+
+        return value;
+    }
+
+
+    /************************************************************************
+     * Support code for the binary format.
+     */
+
+    private static void putText(ByteBuffer buffer, String text, int size) {
+        AsciiField.put(buffer, (text.length() > size) ? text.substring(0, size) : text, size);
+    }
+
+    private static void putVariableText(ByteBuffer buffer, String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte)bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getVariableText(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encode the settings in the current version of the binary format.
+     * @return a buffer holding the complete file, ready to write.
+     */
+    private ByteBuffer encode() {
+        int length = PAYLOAD_SIZE;
+        for (String pair : pairs)
+            length += 1 + pair.length();
+        for (String plug : plugs)
+            length += 1 + plug.length();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length + CHECKSUM_SIZE);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short)length);
+
+        int flags = 0;
+        if (reconfigurable)
+            flags |= RECONFIGURABLE;
+        if (fourthWheel)
+            flags |= FOURTH_WHEEL;
+        if (useLetters)
+            flags |= USE_LETTERS;
+        if (show)
+            flags |= SHOW;
+        if (encipher)
+            flags |= ENCIPHER;
+        buffer.put((byte)flags);
+
+        putText(buffer, reflectorChoice, ID_SIZE);
+        for (String pair : pairs)
+            putText(buffer, pair, PAIR_SIZE);
+
+        for (String wheel : wheels)
+            putText(buffer, wheel, ID_SIZE);
+        for (int ringSetting : ringSettings)
+            buffer.put((byte)ringSetting);
+        for (int rotorOffset : rotorOffsets)
+            buffer.put((byte)rotorOffset);
+
+        for (String plug : plugs)
+            putText(buffer, plug, PAIR_SIZE);
+
+        for (String pair : pairs)
+            putVariableText(buffer, pair);
+        for (String plug : plugs)
+            putVariableText(buffer, plug);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Decode settings from a complete file.
+     * @param buffer holding the complete file.
+     * @return the decoded settings.
+     */
+    private static SettingsFile decode(ByteBuffer buffer) throws IOException {
+        if ((buffer.remaining() < HEADER_SIZE + CHECKSUM_SIZE) || (buffer.getInt(0) != MAGIC))
+            throw new IOException("Not a settings file");
+
+        final int version = buffer.getShort(4);
+        final int length = buffer.getShort(6) & 0xFFFF;
+        if ((version < 1) || (length < PAYLOAD_SIZE))
+            throw new IOException("Unsupported settings file version " + version);
+
+        if (buffer.remaining() != HEADER_SIZE + length + CHECKSUM_SIZE)
+            throw new IOException("Settings file is truncated");
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, HEADER_SIZE + length);
+        if ((int)crc.getValue() != buffer.getInt(HEADER_SIZE + length))
+            throw new IOException("Settings file checksum mismatch");
+
+        SettingsFile file = new SettingsFile();
+        buffer.position(HEADER_SIZE);
+        buffer.limit(HEADER_SIZE + length);
+
+        try {
+            final int flags = buffer.get();
+            file.reconfigurable = (flags & RECONFIGURABLE) != 0;
+            file.fourthWheel = (flags & FOURTH_WHEEL) != 0;
+            file.useLetters = (flags & USE_LETTERS) != 0;
+            file.show = (flags & SHOW) != 0;
+            file.encipher = (flags & ENCIPHER) != 0;
+
+            file.setReflectorChoice(AsciiField.get(buffer, ID_SIZE));
+            for (int i = 0; i < PAIR_COUNT; ++i)
+                file.setPairText(i, AsciiField.get(buffer, PAIR_SIZE));
+
+            for (int i = 0; i < ROTOR_COUNT; ++i)
+                file.setWheelChoice(i, AsciiField.get(buffer, ID_SIZE));
+            for (int i = 0; i < ROTOR_COUNT; ++i)
+                file.setRingIndex(i, buffer.get());
+            for (int i = 0; i < ROTOR_COUNT; ++i)
+                file.setRotorIndex(i, buffer.get());
+
+            for (int i = 0; i < PLUG_COUNT; ++i)
+                file.setPlugText(i, AsciiField.get(buffer, PAIR_SIZE));
+
+            if (version >= 2) {
+                for (int i = 0; i < PAIR_COUNT; ++i)
+                    file.setPairText(i, getVariableText(buffer));
+                for (int i = 0; i < PLUG_COUNT; ++i)
+                    file.setPlugText(i, getVariableText(buffer));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt settings file: " + e.getMessage());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Settings file is truncated");
+        }
+
+        return file;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Check if a file starts with the settings file magic number.
+     * @param path of the file.
+     * @return true if the file is in this format, false otherwise.
+     */
+    public static boolean isSettingsFile(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            while (buffer.hasRemaining() && (channel.read(buffer) != -1))
+                ;
+
+            return !buffer.hasRemaining() && (buffer.getInt(0) == MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read settings from a file.
+     * @param path of the file.
+     * @return the settings.
+     */
+    public static SettingsFile read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > HEADER_SIZE + 0xFFFF + CHECKSUM_SIZE)
+                throw new IOException("Not a settings file");
+
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && (channel.read(buffer) != -1))
+                ;
+            buffer.flip();
+
+            return decode(buffer);
+        }
+    }
+
+    /**
+     * Write the settings to a file, replacing it atomically.
+     * @param path of the file.
+     */
+    public void write(Path path) throws IOException {
+        final Path parent = path.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = encode();
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+
+                channel.force(true);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String joinPairs(String[] list) {
+        StringBuilder builder = new StringBuilder();
+        for (String pair : list) {
+            if (pair.isEmpty())
+                continue;
+            if (builder.length() != 0)
+                builder.append(' ');
+            builder.append(pair);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return the settings as readable "name=value" lines.
+     */
+    public String toText() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# Enigma settings, format version ").append(VERSION).append('\n');
+        builder.append("reflector=").append(reflectorChoice).append('\n');
+        builder.append("reconfigurable=").append(reconfigurable).append('\n');
+        builder.append("pairs=").append(joinPairs(pairs)).append('\n');
+        builder.append("fourthWheel=").append(fourthWheel).append('\n');
+        builder.append("useLetters=").append(useLetters).append('\n');
+        builder.append("show=").append(show).append('\n');
+        builder.append("wheels=").append(String.join(",", wheels)).append('\n');
+
+        builder.append("rings=");
+        for (int ringSetting : ringSettings)
+            builder.append(Mapper.indexToString(ringSetting));
+        builder.append('\n');
+
+        builder.append("offsets=");
+        for (int rotorOffset : rotorOffsets)
+            builder.append(Mapper.indexToString(rotorOffset));
+        builder.append('\n');
+
+        builder.append("plugs=").append(joinPairs(plugs)).append('\n');
+        builder.append("encipher=").append(encipher).append('\n');
+
+        return builder.toString();
+    }
+
+    /**
+     * Export the settings as readable text.
+     * @param path of the text file.
+     */
+    public void writeText(Path path) throws IOException {
+        Files.write(path, toText().getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
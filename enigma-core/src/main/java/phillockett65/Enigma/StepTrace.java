@@ -0,0 +1,361 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StepTrace is a class that records the individual translation steps of a
+ * machine without slowing the translation down. Each step is packed into a
+ * single int (stage, rotor offset, input and output) and added to a
+ * preallocated ring buffer. A background thread takes the steps from the
+ * ring buffer, renders them as text and writes them to the output stream,
+ * so the translating thread never builds a String or waits for I/O. If the
+ * ring buffer fills up the translating thread waits for the background
+ * thread to catch up rather than losing steps. The background thread sleeps
+ * while the ring buffer is empty and is only woken when steps are added, so
+ * an idle trace costs nothing.
+ *
+ * Each key press is added as a single batch, KEY first and LAMP last, so
+ * several machines can share a trace. The rotor ids used for rendering are
+ * the ones most recently given by setRotorIds(), so they should not change
+ * while steps are still waiting to be rendered.
+ */
+package phillockett65.Enigma;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+public class StepTrace implements Closeable {
+
+    // Stages, the rotor stages are offset by the rotor position.
+    public static final int KEY = 0;
+    public static final int PLUGBOARD = 1;
+    public static final int RIGHT_TO_LEFT = 2;
+    public static final int REFLECTOR = RIGHT_TO_LEFT + EnigmaMachine.ROTOR_COUNT;
+    public static final int LEFT_TO_RIGHT = REFLECTOR + 1;
+    public static final int LAMP = LEFT_TO_RIGHT + EnigmaMachine.ROTOR_COUNT;
+
+    // Most steps taken by a single key press.
+    public static final int MAX_STEPS = 13;
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int BATCH = 1024;
+
+    private static StepTrace console = null;
+
+    private final int[] ring;
+    private final int mask;
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile long flushed = 0;
+
+    private volatile boolean consumerWaiting = false;
+    private volatile Thread producerWaiting = null;
+    private final Object flushLock = new Object();
+
+    private final Writer writer;
+    private final boolean closeStream;
+    private final Thread consumer;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    private volatile String[] rotorIds = new String[EnigmaMachine.ROTOR_COUNT];
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param out stream to write the rendered steps to.
+     * @param capacity of the ring buffer in steps, rounded up to a power of 2.
+     * @param closeStream when the trace is closed if true.
+     */
+    private StepTrace(OutputStream out, int capacity, boolean closeStream) {
+        if (capacity < MAX_STEPS)
+            throw new IllegalArgumentException("Trace capacity too small: " + capacity);
+
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        ring = new int[size];
+        mask = size - 1;
+
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 64 * 1024);
+        this.closeStream = closeStream;
+
+        consumer = new Thread(this::consume, "StepTrace");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Create a trace that writes to a stream and closes it when the trace is
+     * closed.
+     * @param out stream to write the rendered steps to.
+     * @param capacity of the ring buffer in steps.
+     * @return the new trace.
+     */
+    public static StepTrace text(OutputStream out, int capacity) {
+        return new StepTrace(out, capacity, true);
+    }
+
+    public static StepTrace text(OutputStream out) {
+        return text(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the shared trace that writes to the command line, as used by
+     * a machine that shows its steps without being given a trace.
+     */
+    public static synchronized StepTrace console() {
+        if (console == null)
+            console = new StepTrace(System.out, DEFAULT_CAPACITY, false);
+
+        return console;
+    }
+
+
+    /************************************************************************
+     * Support code for packing steps.
+     */
+
+    /**
+     * Pack a step into an int.
+     * @param stage of the translation.
+     * @param offset of the rotor, 0 for other stages.
+     * @param input index.
+     * @param output index.
+     * @return the packed step.
+     */
+    public static int step(int stage, int offset, int input, int output) {
+        return (stage << 24) | (offset << 16) | (input << 8) | output;
+    }
+
+    public static int getStage(int step) { return step >>> 24; }
+    public static int getOffset(int step) { return (step >>> 16) & 0xFF; }
+    public static int getInput(int step) { return (step >>> 8) & 0xFF; }
+    public static int getOutput(int step) { return step & 0xFF; }
+
+    private static char letter(int index) { return (char)Mapper.indexToChar(index); }
+
+    /**
+     * Render a step in the same form as the original command line output.
+     * @param step to render.
+     * @param ids of the rotors.
+     * @param builder to append the text to.
+     */
+    public static void render(int step, String[] ids, StringBuilder builder) {
+        final int stage = getStage(step);
+
+        if (stage == KEY) {
+            builder.append("Key: ").append(letter(getInput(step))).append("  ");
+            return;
+        }
+
+        if (stage == LAMP) {
+            builder.append("Lamp: ").append(letter(getOutput(step))).append(System.lineSeparator());
+            return;
+        }
+
+        if (stage == PLUGBOARD) {
+            builder.append("Plugboard");
+        } else if (stage == REFLECTOR) {
+            builder.append("Reflector");
+        } else {
+            final int pos = (stage < REFLECTOR) ? stage - RIGHT_TO_LEFT : stage - LEFT_TO_RIGHT;
+            builder.append(ids[pos]).append('[').append(letter(getOffset(step))).append(']');
+        }
+
+        builder.append('(').append(letter(getInput(step)))
+            .append("->").append(letter(getOutput(step))).append(")  ");
+    }
+
+
+    /************************************************************************
+     * Support code for the background thread.
+     */
+
+    /**
+     * Write text, recording the first failure. After a failure the steps
+     * are discarded so that the translating thread is never blocked.
+     */
+    private void write(StringBuilder builder) {
+        if (failure == null) {
+            try {
+                writer.append(builder);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        builder.setLength(0);
+    }
+
+    private void flushWriter() {
+        if (failure == null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Render and write steps until the trace is closed and the ring buffer
+     * is empty. The output is flushed whenever the ring buffer is empty so
+     * that the steps of a single key press appear promptly.
+     */
+    private void consume() {
+        final StringBuilder builder = new StringBuilder(BATCH * 16);
+
+        while (true) {
+            final long available = head;
+            long position = tail;
+
+            if (position == available) {
+                if (flushed != position) {
+                    flushWriter();
+                    synchronized (flushLock) {
+                        flushed = position;
+                        flushLock.notifyAll();
+                    }
+                }
+                if (closed && (head == position))
+                    break;
+
+                // Announce the wait before checking again, so that add()
+                // either sees the announcement or its steps are seen here.
+                consumerWaiting = true;
+                if ((head == position) && !closed)
+                    LockSupport.park(this);
+                consumerWaiting = false;
+                continue;
+            }
+
+            final String[] ids = rotorIds;
+            final long end = Math.min(available, position + BATCH);
+            for (; position < end; ++position)
+                render(ring[(int)position & mask], ids, builder);
+
+            tail = position;
+            final Thread producer = producerWaiting;
+            if (producer != null)
+                LockSupport.unpark(producer);
+
+            write(builder);
+        }
+
+        if ((closeStream) && (failure == null)) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Set the rotor ids used to render the rotor steps.
+     * @param ids of the rotors by position.
+     */
+    public void setRotorIds(String[] ids) {
+        rotorIds = ids.clone();
+    }
+
+    /**
+     * Add the steps of a key press to the ring buffer, waiting for space if
+     * the background thread has fallen behind.
+     * @param steps packed by step().
+     * @param count of steps to add.
+     */
+    public synchronized void add(int[] steps, int count) {
+        if (closed)
+            throw new IllegalStateException("Trace is closed");
+
+        long position = head;
+        if (position + count - tail > ring.length) {
+            producerWaiting = Thread.currentThread();
+            while (position + count - tail > ring.length)
+                LockSupport.park(this);
+            producerWaiting = null;
+        }
+
+        for (int i = 0; i < count; ++i)
+            ring[(int)position++ & mask] = steps[i];
+
+        head = position;
+        if (consumerWaiting)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Wait until all the steps added so far have been written.
+     */
+    public void flush() throws IOException {
+        final long target = head;
+        synchronized (flushLock) {
+            try {
+                while (flushed < target)
+                    flushLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the trace to flush");
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Write any remaining steps and stop the background thread. The shared 
+     * command line trace is only flushed, it is never closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closeStream) {
+            flush();
+            return;
+        }
+
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+}
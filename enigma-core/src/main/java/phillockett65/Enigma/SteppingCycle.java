@@ -0,0 +1,121 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SteppingCycle is an immutable class that captures the sequence of rotor
+ * positions visited from a starting position. Stepping is deterministic and
+ * there are only CompiledMachine.POSITIONS positions, so the sequence is a
+ * (possibly empty) tail followed by a cycle that repeats forever. This allows
+ * the position after any number of key presses to be found directly.
+ */
+package phillockett65.Enigma;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+public class SteppingCycle {
+
+    private final int[] sequence;
+    private final int[] indices;
+    private final int tail;
+    private final int period;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param sequence of positions visited, each position appears once.
+     * @param tail number of positions before the start of the cycle.
+     */
+    private SteppingCycle(int[] sequence, int tail) {
+        this.sequence = sequence;
+        this.tail = tail;
+        this.period = sequence.length - tail;
+
+        indices = new int[CompiledMachine.POSITIONS];
+        Arrays.fill(indices, -1);
+        for (int i = 0; i < sequence.length; ++i)
+            indices[sequence[i]] = i;
+    }
+
+    /**
+     * Walk the stepping from a starting position until a position repeats.
+     * @param start position of the rotors.
+     * @param next function giving the position after a key press.
+     * @return the SteppingCycle for the starting position.
+     */
+    public static SteppingCycle build(int start, IntUnaryOperator next) {
+        final int[] seen = new int[CompiledMachine.POSITIONS];
+        Arrays.fill(seen, -1);
+
+        final int[] sequence = new int[CompiledMachine.POSITIONS];
+        int count = 0;
+        int position = start;
+        while (seen[position] == -1) {
+            seen[position] = count;
+            sequence[count++] = position;
+            position = next.applyAsInt(position);
+        }
+
+        return new SteppingCycle(Arrays.copyOf(sequence, count), seen[position]);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getTail() { return tail; }
+    public int getPeriod() { return period; }
+
+    /**
+     * @param position of the rotors.
+     * @return true if the position is visited by this sequence.
+     */
+    public boolean contains(int position) { return indices[position] != -1; }
+
+    /**
+     * Find the position reached after a number of key presses.
+     * @param from position of the rotors, which must be visited by this
+     * sequence.
+     * @param presses number of key presses (not negative).
+     * @return the position of the rotors after the key presses.
+     */
+    public int positionAfter(int from, long presses) {
+        int i = indices[from];
+        if (i < tail) {
+            if (presses < tail - i)
+                return sequence[i + (int)presses];
+
+            presses -= tail - i;
+            i = tail;
+        }
+
+        int j = (i - tail) + (int)(presses % period);
+        if (j >= period)
+            j -= period;
+
+        return sequence[tail + j];
+    }
+
+}
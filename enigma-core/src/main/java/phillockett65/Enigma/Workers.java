@@ -0,0 +1,109 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Workers is a class that runs the items of a parallel job, numbered from 0,
+ * on a fixed pool of threads. Each worker thread takes the next item from a
+ * shared counter. A worker's per-thread state, such as its own machine, is
+ * created on its thread when it starts. If any worker fails, no more items
+ * are handed out, and once every worker has stopped the failure is rethrown
+ * to the caller. A job therefore either completes every item or throws,
+ * never returning partial results.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+final class Workers {
+
+    private Workers() {
+    }
+
+    /**
+     * Run every item of a job and wait for them to finish.
+     * @param name prefix of the worker thread names.
+     * @param threads number of worker threads.
+     * @param count number of items, numbered from 0.
+     * @param factory called once on each worker thread with the worker 
+     * number, returns the consumer that processes an item on that worker.
+     * @throws IllegalStateException wrapping a checked failure of a worker, 
+     * unchecked exceptions and errors are rethrown as they are.
+     */
+    static void run(String name, int threads, int count, IntFunction<IntConsumer> factory) throws InterruptedException {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1: " + threads);
+
+        final AtomicInteger nextItem = new AtomicInteger();
+        final AtomicInteger nextThread = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+            runnable -> new Thread(runnable, name + "-" + nextThread.getAndIncrement()));
+
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+            for (int t = 0; t < threads; ++t) {
+                final int worker = t;
+                Callable<Void> task = () -> {
+                    try {
+                        final IntConsumer consumer = factory.apply(worker);
+                        for (int i = nextItem.getAndIncrement(); i < count; i = nextItem.getAndIncrement())
+                            consumer.accept(i);
+                    } catch (RuntimeException | Error e) {
+                        // Stop the other workers taking more items.
+                        nextItem.set(count);
+                        throw e;
+                    }
+
+                    return null;
+                };
+                futures.add(pool.submit(task));
+            }
+
+            Throwable failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                }
+            }
+
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException)failure;
+            if (failure instanceof Error)
+                throw (Error)failure;
+            if (failure != null)
+                throw new IllegalStateException(failure);
+        } finally {
+            nextItem.set(count);
+            pool.shutdownNow();
+        }
+    }
+
+}
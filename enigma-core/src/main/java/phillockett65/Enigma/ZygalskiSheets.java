@@ -0,0 +1,379 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ZygalskiSheets is a class that generates Zygalski's perforated sheets and
+ * stacks them to find the wheel order and ring settings from the females in
+ * a day's indicators. An indicator is a ground setting sent in the clear,
+ * followed by the doubled message key enciphered at that ground setting. A
+ * female is an indicator with the same letter at positions p and p + 3,
+ * which can only happen if the permutation from letter p to letter p + 3
+ * has a fixed point. That does not depend on the plugboard.
+ *
+ * A sheet is generated for each wheel order, each of the three pairs of
+ * letters (AD, BE and CF) and each left rotor core position. It has a row
+ * for each middle rotor core position, and each row is a 26-bit mask of
+ * the right rotor core positions of the first letter at which a female is
+ * possible. As on the original sheets, only the right rotor turns during
+ * the six letters, so an indicator that turns the middle rotor is ignored
+ * for that wheel order. The stepping depends on the visible letters only,
+ * so this is known exactly from the ground setting.
+ *
+ * The core position is the visible position minus the ring setting, as in
+ * EnigmaMachine.setRingSetting(). For a female at visible position (L, M,
+ * R), the ring settings (a, b, c) survive if row M - b of sheet L - a has
+ * bit R - c set. For a given (a, b) each row is reversed and doubled to 52
+ * bits once, so that bit c for all 26 right ring settings is one shift and
+ * mask. The rows of every female are then stacked with a bitwise AND, which
+ * evaluates all 26 right ring settings at once.
+ */
+package phillockett65.Enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ZygalskiSheets {
+
+    public static final int PAIRS = 3;
+    public static final int ROWS = 26 * 26;
+
+    private static final long MASK = (1L << 26) - 1;
+
+    private final RotorRegistry registry;
+    private String reflectorChoice = "Reflector B";
+    private List<String> rotorIds = Arrays.asList("I", "II", "III", "IV", "V");
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // The sheets, built on first use.
+    private List<String[]> orders;
+    private long[][] sheets;
+    private long[][] stacks;
+    private CompiledMachine[] tables;
+
+
+    /************************************************************************
+     * Candidate is a class that captures a surviving setting.
+     */
+    public static class Candidate {
+        private final String[] wheels;
+        private final int[] ringSettings;
+
+        public Candidate(String[] wheels, int[] ringSettings) {
+            this.wheels = wheels;
+            this.ringSettings = ringSettings;
+        }
+
+        public String getWheelChoice(int index) { return wheels[index]; }
+        public int getRingSetting(int index) { return ringSettings[index]; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s  rings %s%s%s", wheels[0], wheels[1], wheels[2],
+                Mapper.indexToString(ringSettings[0]),
+                Mapper.indexToString(ringSettings[1]),
+                Mapper.indexToString(ringSettings[2]));
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param registry of the available Rotors.
+     */
+    public ZygalskiSheets(RotorRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void setReflectorChoice(String choice) { reflectorChoice = choice; sheets = null; }
+    public void setRotorIds(List<String> ids) { rotorIds = ids; sheets = null; }
+    public void setThreads(int count) { threads = count; }
+
+
+    /************************************************************************
+     * Support code for generating the sheets.
+     */
+
+    /**
+     * Check if the product of two enciphering permutations has a fixed 
+     * point.
+     * @param table compiled with the ring settings at 'A'.
+     * @param first position of the first permutation.
+     * @param second position of the second permutation.
+     * @return true if a female is possible.
+     */
+    private static boolean hasFixedPoint(CompiledMachine table, int first, int second) {
+        for (int i = 0; i < 26; ++i)
+            if (table.encipher(second, table.encipher(first, i)) == i)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * @param bits 26-bit row.
+     * @return the row reversed (bit i moved to bit -i) and doubled to 52 
+     * bits.
+     */
+    private static long reverseAndDouble(long bits) {
+        long reversed = bits & 1;
+        for (int i = 1; i < 26; ++i)
+            if (((bits >>> i) & 1) != 0)
+                reversed |= 1L << (26 - i);
+
+        return reversed | (reversed << 26);
+    }
+
+    /**
+     * Generate the sheets of a wheel order.
+     * @param machine owned by the calling worker thread.
+     * @param index of the wheel order.
+     */
+    private void generateWheelOrder(EnigmaMachine machine, int index) {
+        final String[] wheels = orders.get(index);
+        machine.setRotor(EnigmaMachine.LEFT, registry.getRotor(wheels[0]));
+        machine.setRotor(EnigmaMachine.MIDDLE, registry.getRotor(wheels[1]));
+        machine.setRotor(EnigmaMachine.RIGHT, registry.getRotor(wheels[2]));
+        if (!machine.compile())
+            throw new IllegalStateException("Sheets need a compiled machine, increase the budget to " + CompiledMachine.getTableSize());
+
+        final CompiledMachine table = machine.getCompiledMachine();
+        final long[] rows = new long[PAIRS * ROWS];
+        for (int pair = 0; pair < PAIRS; ++pair) {
+            for (int row = 0; row < ROWS; ++row) {
+                final int base = row * 26;
+                long bits = 0;
+                for (int right = 0; right < 26; ++right) {
+                    final int first = base + (right + pair) % 26;
+                    final int second = base + (right + pair + 3) % 26;
+                    if (hasFixedPoint(table, first, second))
+                        bits |= 1L << right;
+                }
+                rows[pair * ROWS + row] = bits;
+            }
+        }
+
+        final long[] doubled = new long[rows.length];
+        for (int i = 0; i < rows.length; ++i)
+            doubled[i] = reverseAndDouble(rows[i]);
+
+        tables[index] = table;
+        sheets[index] = rows;
+        stacks[index] = doubled;
+    }
+
+    /**
+     * Generate the sheets for every wheel order, if not already done.
+     */
+    public synchronized void generate() throws InterruptedException {
+        if (sheets != null)
+            return;
+
+        final Rotor reflector = registry.getReflector(reflectorChoice);
+        if (reflector == null)
+            throw new IllegalArgumentException("Unknown reflector: " + reflectorChoice);
+
+        for (String id : rotorIds)
+            if (registry.getRotor(id) == null)
+                throw new IllegalArgumentException("Unknown rotor: " + id);
+
+        orders = RotorRegistry.getWheelOrders(rotorIds);
+        sheets = new long[orders.size()][];
+        stacks = new long[orders.size()][];
+        tables = new CompiledMachine[orders.size()];
+
+        boolean generated = false;
+        try {
+            Workers.run("ZygalskiSheets", threads, orders.size(), worker -> {
+                final EnigmaMachine machine = new EnigmaMachine();
+                machine.setReflector(reflector.getMap());
+
+                return i -> generateWheelOrder(machine, i);
+            });
+            generated = true;
+        } finally {
+            if (!generated) {
+                // Discard the partial sheets so the next call starts afresh.
+                orders = null;
+                sheets = null;
+                stacks = null;
+                tables = null;
+            }
+        }
+    }
+
+    private int findWheelOrder(String[] wheels) {
+        for (int i = 0; i < orders.size(); ++i)
+            if (Arrays.equals(orders.get(i), wheels))
+                return i;
+
+        throw new IllegalArgumentException("Unknown wheel order: " + String.join(",", wheels));
+    }
+
+    /**
+     * Get a sheet.
+     * @param wheels rotor ids for the left, middle and right positions.
+     * @param pair 0 for AD, 1 for BE, 2 for CF.
+     * @param left core position of the left rotor.
+     * @return the 26 rows of the sheet, indexed by the core position of the 
+     * middle rotor.
+     */
+    public long[] getSheet(String[] wheels, int pair, int left) throws InterruptedException {
+        generate();
+
+        final int from = pair * ROWS + left * 26;
+
+        return Arrays.copyOfRange(sheets[findWheelOrder(wheels)], from, from + 26);
+    }
+
+    /**
+     * Draw a sheet as text, a row for each middle rotor core position and a 
+     * column for each right rotor core position, with 'O' for a hole.
+     * @param sheet from getSheet().
+     * @return the sheet as text.
+     */
+    public static String sheetToString(long[] sheet) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("  ");
+        for (int right = 0; right < 26; ++right)
+            builder.append(Mapper.indexToString(right));
+        builder.append('\n');
+
+        for (int middle = 0; middle < 26; ++middle) {
+            builder.append(Mapper.indexToString(middle)).append(' ');
+            for (int right = 0; right < 26; ++right)
+                builder.append(((sheet[middle] >>> right) & 1) != 0 ? 'O' : '.');
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+
+
+    /************************************************************************
+     * Support code for the search.
+     */
+
+    /**
+     * Parse an indicator, the 3 letter ground setting followed by the 6 
+     * enciphered letters, non-letters are ignored.
+     * @param text of the indicator, e.g. "KDO JKRJXL".
+     * @return 9 letter indices.
+     */
+    private static int[] parseIndicator(String text) {
+        final String letters = text.replaceAll("[^A-Za-z]", "");
+        if (letters.length() != 9)
+            throw new IllegalArgumentException("Expected a ground setting and 6 letters: " + text);
+
+        int[] indices = new int[9];
+        for (int i = 0; i < 9; ++i)
+            indices[i] = Mapper.charToIndex(letters.charAt(i));
+
+        return indices;
+    }
+
+    /**
+     * Stack the sheets of the females for a wheel order.
+     * @param index of the wheel order.
+     * @param females as { pair, ground setting position }.
+     * @param candidates to add the surviving ring settings to.
+     */
+    private void stackWheelOrder(int index, List<int[]> females, List<Candidate> candidates) {
+        final CompiledMachine table = tables[index];
+        final long[] doubled = stacks[index];
+
+        // Ignore the females whose indicator turns the middle rotor.
+        ArrayList<int[]> usable = new ArrayList<int[]>(females.size());
+        for (int[] female : females) {
+            final int first = table.next(female[1]);
+            final int still = first - CompiledMachine.toRight(first);
+
+            int position = first;
+            boolean turns = false;
+            for (int i = 1; i < 6; ++i) {
+                position = table.next(position);
+                if (position - CompiledMachine.toRight(position) != still)
+                    turns = true;
+            }
+
+            if (!turns)
+                usable.add(new int[] { female[0], CompiledMachine.toLeft(first),
+                    CompiledMachine.toMiddle(first), CompiledMachine.toRight(first) });
+        }
+        if (usable.isEmpty())
+            return;
+
+        for (int a = 0; a < 26; ++a) {
+            for (int b = 0; b < 26; ++b) {
+                long stack = MASK;
+                for (int f = 0; (f < usable.size()) && (stack != 0); ++f) {
+                    final int[] female = usable.get(f);
+                    final int left = (female[1] - a + 26) % 26;
+                    final int middle = (female[2] - b + 26) % 26;
+                    stack &= doubled[female[0] * ROWS + left * 26 + middle] >>> (26 - female[3]);
+                }
+                stack &= MASK;
+
+                for (int c = 0; stack != 0; ++c, stack >>>= 1)
+                    if ((stack & 1) != 0)
+                        candidates.add(new Candidate(orders.get(index), new int[] { a, b, c }));
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Stack the sheets of the females in a day's indicators for every wheel 
+     * order.
+     * @param indicators each a 3 letter ground setting followed by the 6 
+     * enciphered letters of the doubled message key.
+     * @return the wheel orders and ring settings that survive.
+     */
+    public List<Candidate> run(List<String> indicators) throws InterruptedException {
+        ArrayList<int[]> females = new ArrayList<int[]>();
+        for (String indicator : indicators) {
+            final int[] letters = parseIndicator(indicator);
+            final int ground = CompiledMachine.toPosition(letters[0], letters[1], letters[2]);
+            for (int pair = 0; pair < PAIRS; ++pair)
+                if (letters[3 + pair] == letters[6 + pair])
+                    females.add(new int[] { pair, ground });
+        }
+
+        if (females.isEmpty())
+            throw new IllegalArgumentException("The indicators contain no females");
+
+        generate();
+
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        for (int i = 0; i < orders.size(); ++i)
+            stackWheelOrder(i, females, candidates);
+
+        return candidates;
+    }
+
+}
@@ -0,0 +1,386 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataStore is a class that captures the settings data for saving and 
+ * restoring to and from disc. The settings are written in the binary format
+ * of SettingsFile. DataStore is still Serializable only so that settings
+ * files written with Java serialization by earlier versions can be read and
+ * migrated.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+public class DataStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final String BACKUP = ".bak";
+
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_ARRAY_LENGTH = 256;
+    private static final int MAX_REFERENCES = 1024;
+    private static final long MAX_BYTES = 64 * 1024;
+
+    private String reflectorChoice;
+    private Boolean reconfigurable;
+    private ArrayList<String> pairs = new ArrayList<String>();
+
+    private Boolean fourthWheel;
+    private Boolean useLetters;
+    private Boolean show;
+
+    private ArrayList<String> wheels = new ArrayList<String>();
+    private ArrayList<Integer> ringSettings = new ArrayList<Integer>();
+    private ArrayList<Integer> rotorOffsets = new ArrayList<Integer>();
+
+    private ArrayList<String> plugs = new ArrayList<String>();
+    private Boolean encipher;
+
+    public DataStore() {
+    }
+
+    /**
+     * Data exchange from the model to this DataStore.
+     * @param model contains the data.
+     * @return true if data successfully pulled from the model, false otherwise.
+     */
+    public boolean pull(Model model) {
+        boolean success = true;
+
+        reflectorChoice = model.getReflectorChoice();
+        reconfigurable = model.isReconfigurable();
+
+        final int pairCount = model.getPairCount();
+        for (int i = 0; i < pairCount; ++i)
+            pairs.add(model.getPairText(i));
+
+        fourthWheel = model.isFourthWheel();
+        useLetters = model.isUseLetters();
+        show = model.isShow();
+
+        final int rotorStateCount = model.getRotorStateCount();
+        for (int i = 0; i < rotorStateCount; ++i) {
+            wheels.add(model.getWheelChoice(i));
+            ringSettings.add(model.getRingIndex(i));
+            rotorOffsets.add(model.getRotorIndex(i));
+        }
+
+        final int plugCount = model.getPlugCount();
+        for (int i = 0; i < plugCount; ++i)
+            plugs.add(model.getPlugText(i));
+
+        encipher = model.isEncipher();
+
+        return success;
+    }
+
+    /**
+     * Data exchange from this DataStore to the model.
+     * @param model contains the data.
+     * @return true if data successfully pushed to the model, false otherwise.
+     */
+    public boolean push(Model model) {
+        boolean success = true;
+
+        model.setReflectorChoice(reflectorChoice);
+        model.setReconfigurable(reconfigurable);
+
+        final int pairCount = pairs.size();
+        for (int i = 0; i < pairCount; ++i)
+            model.setPairText(i, pairs.get(i));
+
+        model.setFourthWheel(fourthWheel);
+        model.setUseLetters(useLetters);
+        model.setShow(show);
+
+        final int rotorStateCount = wheels.size();
+        for (int i = 0; i < rotorStateCount; ++i) {
+            model.setWheelChoice(i, wheels.get(i));
+            model.setRingIndex(i, ringSettings.get(i));
+            model.setRotorIndex(i, rotorOffsets.get(i));
+        }
+
+        final int plugCount = plugs.size();
+        for (int i = 0; i < plugCount; ++i)
+            model.setPlugText(i, plugs.get(i));
+
+        model.setEncipher(encipher);
+
+        return success;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the settings file format.
+     */
+
+    /**
+     * Limit the text of a pair or plug field to what a SettingsFile holds, 
+     * so that a field being edited never stops the settings being saved.
+     * @param text of the field.
+     * @return the text, truncated if necessary.
+     */
+    private static String limit(String text) {
+        if (text == null)
+            return "";
+
+        return (text.length() > SettingsFile.MAX_TEXT_LENGTH) ? text.substring(0, SettingsFile.MAX_TEXT_LENGTH) : text;
+    }
+
+    /**
+     * Copy this DataStore to a SettingsFile for writing.
+     * @return the SettingsFile.
+     */
+    private SettingsFile toSettingsFile() {
+        SettingsFile file = new SettingsFile();
+
+        file.setReflectorChoice(reflectorChoice);
+        file.setReconfigurable(reconfigurable);
+        for (int i = 0; i < Math.min(pairs.size(), SettingsFile.PAIR_COUNT); ++i)
+            file.setPairText(i, limit(pairs.get(i)));
+
+        file.setFourthWheel(fourthWheel);
+        file.setUseLetters(useLetters);
+        file.setShow(show);
+
+        for (int i = 0; i < Math.min(wheels.size(), SettingsFile.ROTOR_COUNT); ++i) {
+            file.setWheelChoice(i, wheels.get(i));
+            file.setRingIndex(i, ringSettings.get(i));
+            file.setRotorIndex(i, rotorOffsets.get(i));
+        }
+
+        for (int i = 0; i < Math.min(plugs.size(), SettingsFile.PLUG_COUNT); ++i)
+            file.setPlugText(i, limit(plugs.get(i)));
+
+        file.setEncipher(encipher);
+
+        return file;
+    }
+
+    /**
+     * Copy a SettingsFile that has been read into this DataStore.
+     * @param file containing the settings.
+     */
+    private void fromSettingsFile(SettingsFile file) {
+        reflectorChoice = file.getReflectorChoice();
+        reconfigurable = file.isReconfigurable();
+        for (int i = 0; i < SettingsFile.PAIR_COUNT; ++i)
+            pairs.add(file.getPairText(i));
+
+        fourthWheel = file.isFourthWheel();
+        useLetters = file.isUseLetters();
+        show = file.isShow();
+
+        for (int i = 0; i < SettingsFile.ROTOR_COUNT; ++i) {
+            wheels.add(file.getWheelChoice(i));
+            ringSettings.add(file.getRingIndex(i));
+            rotorOffsets.add(file.getRotorIndex(i));
+        }
+
+        for (int i = 0; i < SettingsFile.PLUG_COUNT; ++i)
+            plugs.add(file.getPlugText(i));
+
+        encipher = file.isEncipher();
+    }
+
+    /**
+     * Restrict a legacy settings file to the classes a DataStore is made of, 
+     * within limits on the size of the object graph.
+     * @param info about the class or object about to be deserialized.
+     * @return the status of the check.
+     */
+    private static ObjectInputFilter.Status filterLegacy(ObjectInputFilter.FilterInfo info) {
+        if ((info.depth() > MAX_DEPTH) || (info.arrayLength() > MAX_ARRAY_LENGTH) ||
+            (info.references() > MAX_REFERENCES) || (info.streamBytes() > MAX_BYTES))
+            return ObjectInputFilter.Status.REJECTED;
+
+        final Class<?> serialClass = info.serialClass();
+        if (serialClass == null)
+            return ObjectInputFilter.Status.ALLOWED;
+
+        // ArrayList stores its elements in an Object[] and Integer extends Number.
+        if ((serialClass == DataStore.class) || (serialClass == ArrayList.class) ||
+            (serialClass == String.class) || (serialClass == Integer.class) ||
+            (serialClass == Boolean.class) || (serialClass == Number.class) ||
+            (serialClass == Object[].class))
+            return ObjectInputFilter.Status.ALLOWED;
+
+        return ObjectInputFilter.Status.REJECTED;
+    }
+
+    /**
+     * Read a settings file written with Java serialization by earlier 
+     * versions. This is the only use of the serialization machinery and is 
+     * only needed once, as the file is then rewritten in the current format.
+     * @param path of the old settings file.
+     * @return the DataStore read from the file.
+     */
+    private static DataStore readLegacy(Path path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(Files.newInputStream(path))) {
+            objectInputStream.setObjectInputFilter(DataStore::filterLegacy);
+            return (DataStore)objectInputStream.readObject();
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for static public interface.
+     */
+
+    /**
+     * Static method that instantiates a DataStore and populates it from the 
+     * model, so that the state can be written to disc later, from another 
+     * thread.
+     * @param model contains the data.
+     * @return the populated DataStore.
+     */
+    public static DataStore capture(Model model) {
+        DataStore dataStore = new DataStore();
+        dataStore.pull(model);
+
+        return dataStore;
+    }
+
+    /**
+     * Write this DataStore to disc.
+     * @param path of the settings data file.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public boolean write(Path path) {
+        boolean success = false;
+
+        try {
+            toSettingsFile().write(path);
+            success = true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+
+        return success;
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from the 
+     * model and writes it to disc.
+     * @param model contains the data.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public static boolean writeData(Model model) {
+        DataStore dataStore = capture(model);
+        dataStore.dump();
+
+        return dataStore.write(Paths.get(model.getSettingsFile()));
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from disc 
+     * and writes it to the model. A settings file from an earlier version 
+     * is migrated to the current format, keeping a backup of the original.
+     * @param model contains the data.
+     * @return true if data successfully read from disc, false otherwise.
+     */
+    public static boolean readData(Model model) {
+        boolean success = false;
+        final Path path = Paths.get(model.getSettingsFile());
+
+        try {
+            if (SettingsFile.isSettingsFile(path)) {
+                DataStore dataStore = new DataStore();
+                dataStore.fromSettingsFile(SettingsFile.read(path));
+                success = dataStore.push(model);
+                dataStore.dump();
+            } else {
+                DataStore dataStore = readLegacy(path);
+                success = dataStore.push(model);
+                dataStore.dump();
+
+                if (success) {
+                    Files.copy(path, Paths.get(path + BACKUP), StandardCopyOption.REPLACE_EXISTING);
+                    dataStore.toSettingsFile().write(path);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (ClassNotFoundException e) {
+            System.out.println(e.getMessage());
+        }
+
+        return success;
+    }
+
+    /**
+     * Static method that exports the settings of the model as readable text.
+     * @param model contains the data.
+     * @param path of the text file.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public static boolean exportText(Model model, Path path) {
+        DataStore dataStore = new DataStore();
+        dataStore.pull(model);
+
+        try {
+            dataStore.toSettingsFile().writeText(path);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+
+        return false;
+    }
+
+
+
+    /************************************************************************
+     * Support code for debug stuff.
+     */
+
+    /**
+      * Print data store on the command line.
+      */
+    private void dump() {
+        // System.out.println("reflectorChoice = " + reflectorChoice);
+        // System.out.println("reconfigurable = " + reconfigurable);
+        // System.out.println("pairs = " + pairs);
+
+        // System.out.println("fourthWheel = " + fourthWheel);
+        // System.out.println("useLetters = " + useLetters);
+        // System.out.println("show = " + show);
+
+        // System.out.println("wheels = " + wheels);
+        // System.out.println("ringSettings = " + ringSettings);
+        // System.out.println("rotorOffsets = " + rotorOffsets);
+
+        // System.out.println("plugs = " + plugs);
+        // System.out.println("encipher = " + encipher);
+    }
+
+}
+
@@ -24,7 +24,11 @@
  */
 package phillockett65.Enigma;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -33,17 +37,12 @@ import javafx.scene.control.SpinnerValueFactory;
 public class Model {
 
     private final static String DATAFILE = "Settings.dat";
+    private final static String JOURNAL = ".journal";
 
-    public static final int ROTOR_COUNT = 4;
+    public static final int ROTOR_COUNT = EnigmaMachine.ROTOR_COUNT;
     public final static int PLUG_COUNT = 13;
     public final static int PAIR_COUNT = 12;
 
-    private static final int OTHER = -1;
-    private static final int SLOW = 0;
-    private static final int LEFT = 1;
-    private static final int MIDDLE = 2;
-    private static final int RIGHT = 3;
-
 
     /************************************************************************
      * General support code.
@@ -102,6 +101,14 @@ public class Model {
         return DATAFILE;
     }
 
+    /**
+     * @return the file path of the key journal, kept beside the settings 
+     * data file.
+     */
+    public String getJournalFile() {
+        return getSettingsFile() + JOURNAL;
+    }
+
 
 
     /************************************************************************
@@ -113,7 +120,6 @@ public class Model {
      * the controller.
      */
     public Model() {
-        initRotorWiring();
     }
 
 
@@ -131,6 +137,8 @@ public class Model {
 
         if (!DataStore.readData(this))
             defaultSettings();
+
+        openJournal();
     }
 
     /**
@@ -177,84 +185,9 @@ public class Model {
      * Support code for Rotor definitions.
      */
 
-    ObservableList<Rotor> commercial = FXCollections.observableArrayList();
-    ObservableList<Rotor> rocket = FXCollections.observableArrayList();
-    ObservableList<Rotor> swissK = FXCollections.observableArrayList();
-    ObservableList<Rotor> m3 = FXCollections.observableArrayList();
-    ObservableList<Rotor> m4 = FXCollections.observableArrayList();
-
-    ObservableList<Rotor> rotors = FXCollections.observableArrayList();
-    ObservableList<Rotor> reflectors = FXCollections.observableArrayList();
-
-    /**
-     * Construct all the Rotor collections.
-     * 
-     * Note: for the commercial, rocket and swissK Rotors, the turnover points 
-     * are guesses and may be incorrect.
-     */
-    private void initRotorWiring() {
-
-        commercial.add(new Rotor("IC",	"DMTWSILRUYQNKFEJCAZBPGXOHV",	"1924",	"Commercial Enigma A, B", "R"));
-        commercial.add(new Rotor("IIC",	"HQZGPJTMOBLNCIFDYAWVEUSRKX",	"1924",	"Commercial Enigma A, B", "F"));
-        commercial.add(new Rotor("IIIC","UQNTLSZFMREHDPXKIBVYGJCWOA",	"1924",	"Commercial Enigma A, B", "W"));
-
-        rocket.add(new Rotor("I-R", 	"JGDQOXUSCAMIFRVTPNEWKBLZYH",	"7 February 1941",	"German Railway (Rocket)", "R"));
-        rocket.add(new Rotor("II-R",	"NTZPSFBOKMWRCJDIVLAEYUXHGQ",	"7 February 1941",	"German Railway (Rocket)", "F"));
-        rocket.add(new Rotor("III-R",	"JVIUBHTCDYAKEQZPOSGXNRMWFL",	"7 February 1941",	"German Railway (Rocket)", "W"));
-        rocket.add(new Rotor("UKW-R",	"QYHOGNECVPUZTFDJAXWMKISRBL",	"7 February 1941",	"German Railway (Rocket)", ""));
-        rocket.add(new Rotor("ETW-R",	"QWERTZUIOASDFGHJKPYXCVBNML",	"7 February 1941",	"German Railway (Rocket)", ""));
-
-        swissK.add(new Rotor("I-K",		"PEZUOHXSCVFMTBGLRINQJWAYDK",	"February 1939",	"Swiss K", "R"));
-        swissK.add(new Rotor("II-K",	"ZOUESYDKFWPCIQXHMVBLGNJRAT",	"February 1939",	"Swiss K", "F"));
-        swissK.add(new Rotor("III-K",	"EHRVXGAOBQUSIMZFLYNWKTPDJC",	"February 1939",	"Swiss K", "W"));
-        swissK.add(new Rotor("UKW-K",	"IMETCGFRAYSQBZXWLHKDVUPOJN",	"February 1939",	"Swiss K", ""));
-        swissK.add(new Rotor("ETW-K",	"QWERTZUIOASDFGHJKPYXCVBNML",	"February 1939",	"Swiss K", ""));
+    private final RotorRegistry registry = new RotorRegistry();
 
-        m3.add(new Rotor("I",		"EKMFLGDQVZNTOWYHXUSPAIBRCJ",	"1930",	"Enigma I", "R"));
-        m3.add(new Rotor("II",		"AJDKSIRUXBLHWTMCQGZNPYFVOE",	"1930",	"Enigma I", "F"));
-        m3.add(new Rotor("III",		"BDFHJLCPRTXVZNYEIWGAKMUSQO",	"1930",	"Enigma I", "W"));
-        m3.add(new Rotor("IV",		"ESOVPZJAYQUIRHXLNFTGKDCMWB",	"December 1938",	"M3 Army", "K"));
-        m3.add(new Rotor("V",		"VZBRGITYUPSDNHLXAWMJQOFECK",	"December 1938",	"M3 Army", "A"));
-        m3.add(new Rotor("VI",		"JPGVOUMFYQBENHZRDKASXLICTW",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
-        m3.add(new Rotor("VII",		"NZJHGRCXMYSWBOUFAIVLPEKQDT",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
-        m3.add(new Rotor("VIII",	"FKQHTLXOCBJSPDZRAMEWNIUYGV",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"));
-
-        m4.add(new Rotor("Beta",				"LEYJVCNIXWPBQMDRTAKZGFUHOS",	"Spring 1941",	"M4 R2", ""));
-        m4.add(new Rotor("Gamma",				"FSOKANUERHMBTIYCWLQPZXVGJD",	"Spring 1942",	"M4 R2", ""));
-        m4.add(new Rotor("Reflector A",			"EJMZALYXVBWFCRQUONTSPIKHGD",	"",	"", ""));
-        m4.add(new Rotor("Reflector B",			"YRUHQSLDPXNGOKMIEBFZCWVJAT",	"",	"", ""));
-        m4.add(new Rotor("Reflector C",			"FVPJIAOYEDRZXWGCTKUQSBNMHL",	"",	"", ""));
-        m4.add(new Rotor("Reflector B Thin",	"ENKQAUYWJICOPBLMDXZVFTHRGS",	"1940",	"M4 R1 (M3 + Thin)", ""));
-        m4.add(new Rotor("Reflector C Thin",	"RDOBJNTKVEHMLFCWZAXGYIPSUQ",	"1940",	"M4 R1 (M3 + Thin)", ""));
-        m4.add(new Rotor("ETW",					"ABCDEFGHIJKLMNOPQRSTUVWXYZ",	"",	"Enigma I", ""));
-
-        // Build list of rotors and list of reflectors that can be selected.
-        for (Rotor rotor : m3)
-            if (!rotor.isReflector())
-                rotors.add(rotor);
-
-        for (Rotor rotor : m4)
-            if (!rotor.isReflector())
-                rotors.add(rotor);
-            else
-                reflectors.add(rotor);
-
-        for (Rotor rotor : rocket)
-            if (!rotor.isReflector())
-                rotors.add(rotor);
-            else
-                reflectors.add(rotor);
-
-        for (Rotor rotor : swissK)
-            if (!rotor.isReflector())
-                rotors.add(rotor);
-            else
-                reflectors.add(rotor);
-
-        for (Rotor rotor : commercial)
-            if (!rotor.isReflector())
-                rotors.add(rotor);
-    }
+    public RotorRegistry getRegistry() { return registry; }
 
 
 
@@ -269,7 +202,6 @@ public class Model {
     private int[] reflectorLetterCounts;
     private int[] reconfigurableReflectorMap;
     private int[] reflectorMap;
-    private Mapper reflector;
 
     private ArrayList<Pair> pairs = new ArrayList<Pair>(PAIR_COUNT);
 
@@ -398,9 +330,9 @@ public class Model {
 
             return reconfigurableReflectorMap;
         } else {
-            Rotor rotor = getRotor(reflectors, reflectorChoice);
-            if (rotor != null)
-                return rotor.getMap();
+            final int handle = registry.getReflectorHandle(reflectorChoice);
+            if (handle != RotorRegistry.NONE)
+                return registry.getReflector(handle).getMap();
         }
 
         return null;
@@ -421,7 +353,7 @@ public class Model {
     private void fillReflectorList() {
         reflectorList.clear();
 
-        for (Rotor rotor : reflectors)
+        for (Rotor rotor : registry.getReflectors())
             reflectorList.add(rotor.getId());
     }
 
@@ -477,7 +409,7 @@ public class Model {
     public boolean isUseLetters() { return useLetters; }
     
     public boolean isShow() { return show; }
-    public void setShow(boolean state) { show = state; }
+    public void setShow(boolean state) { show = state; machine.setShow(state); }
 
 
     /**
@@ -529,9 +461,9 @@ public class Model {
 
     public String getRotorOffset(int index) { return getState(index).getRotorOffset(); }
     public int getRotorIndex(int index) { return getState(index).getRotorIndex(); }
-    public void setRotorOffset(int index, String value) { getState(index).setRotorOffset(value); }
-    public void setRotorIndex(int index, int value) { getState(index).setRotorIndex(value); }
-    public void incrementRotorOffset(int index, int step) { getState(index).incrementRotorOffset(step); }
+    public void setRotorOffset(int index, String value) { getState(index).setRotorOffset(value); syncMachineOffset(index); }
+    public void setRotorIndex(int index, int value) { getState(index).setRotorIndex(value); syncMachineOffset(index); }
+    public void incrementRotorOffset(int index, int step) { getState(index).incrementRotorOffset(step); syncMachineOffset(index); }
 
 
     /**
@@ -539,7 +471,7 @@ public class Model {
      */
     private void initializeRotorSetup() {
         // Initialize "Rotor Selection" panel.
-        for (Rotor rotor : rotors)
+        for (Rotor rotor : registry.getRotors())
             wheelList.add(rotor.getId());
 
         // Initialize "Ring Settings" panel.
@@ -563,7 +495,6 @@ public class Model {
     
     private int[] plugboardLetterCounts;
     private int[] plugboardMap;
-    private Mapper plugboard;
 
     private ArrayList<Pair> plugs = new ArrayList<Pair>(PLUG_COUNT);
 
@@ -669,7 +600,8 @@ public class Model {
 
     private boolean encipher = false;
 
-    private ArrayList<Translation> pipeline = new ArrayList<Translation>(9);
+    private final EnigmaMachine machine = new EnigmaMachine();
+    private final int[] rotorHandles = new int[ROTOR_COUNT];
 
     /**
      * Determine if all settings are valid which requires checking the 
@@ -682,210 +614,214 @@ public class Model {
 
     public boolean isEncipher() { return encipher; }
 
+    public EnigmaMachine getMachine() { return machine; }
+
     /**
-     * Find a Rotor with the given id in the given list,
-     * @param list of Rotors to search.
-     * @param target id of Rotor.
-     * @return Rotor with matching id if found, null otherwise.
+     * Resolve the selected wheels to Rotor handles.
      */
-    private Rotor getRotor(ObservableList<Rotor> list, String target) {
-        for (Rotor rotor : list)
-             if (rotor.is(target))
-                return rotor;
-
-        return null;
+    private void lockdownRotors() {
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            rotorHandles[i] = registry.getRotorHandle(getWheelChoice(i));
     }
 
-
     /**
-     * Advances the spinner of the right rotor then checks the other rotors. 
-     * The notch point of the middle rotor is used to check for a step of the 
-     * left rotor and a double step of the middle rotor. The turnover point of 
-     * the right rotor is used to check for a step of the middle rotor
+     * Update the offset of the indexed rotor of the machine to match the 
+     * Spinner.
+     * @param index of the rotor.
      */
-    private void advanceRotors() {
-        // Normal step of the spinner of the right rotor.
-        incrementRotorOffset(RIGHT, 1);
-
-        Rotor rotor = getRotor(rotors, getWheelChoice(MIDDLE));
-        if (rotor.isNotchPoint(getRotorIndex(MIDDLE))) {
-            // Double step of the spinner of the middle rotor, normal step of 
-            // the spinner of the left rotor.
-            incrementRotorOffset(MIDDLE, 1);
-            incrementRotorOffset(LEFT, 1);
-        }
-
-        rotor = getRotor(rotors, getWheelChoice(RIGHT));
-        if (rotor.isTurnoverPoint(getRotorIndex(RIGHT))) {
-            // The right rotor takes the spinner of the middle rotor one step 
-            // further.
-            incrementRotorOffset(MIDDLE, 1);
+    private void syncMachineOffset(int index) {
+        final int offset = getRotorIndex(index);
+        if (machine.getOffset(index) != offset) {
+            machine.setOffset(index, offset);
+            journal(KeyJournal.OFFSET, index);
         }
     }
 
-
     /**
-     * Translation is a class that is used in the construction of the pipeline 
-     * to maintain direction and helps manage the offsets of the Rotors.
+     * Update the Spinners to match the rotor offsets of the machine. Only the 
+     * Spinners that have changed are updated to keep listener traffic to a 
+     * minimum.
      */
-    private class Translation {
-        private final int pos;
-        private final Mapper mapper;
-        private final int dir;
-
-        public Translation(int id, Mapper mapper, int dir) {
-            this.pos = id;
-            this.mapper = mapper;
-            this.dir = dir;
-        }
-
-        /**
-         * Update the offset of this mapper only if target matches pos.
-         * @param target position to match with this pos.
-         * @param offset to set this offset to.
-         * @return true if the offset is updated, false otherwise.
-         */
-        public boolean conditionallyUpdate(int target, int offset) {
-            if (target == pos) {
-                mapper.setOffset(offset);
-
-                return true;
-            }
-
-            return false;
+    private void syncRotorOffsets() {
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            final int offset = machine.getOffset(i);
+            if (getRotorIndex(i) != offset)
+                getState(i).setRotorIndex(offset);
         }
-    
-        /**
-         * Translates an index (numerical equivalent of the letter) to another 
-         * using this directional Mapper (Rotor).
-         * @param index to translate.
-         * @return the translated index.
-         */
-        public int translate(int index) {
-            return mapper.swap(dir, index, isShow());
-        }	
-
     }
 
     /**
-     * Translates an index (numerical equivalent of the letter) to another for 
-     * every Mapper in the pipeline.
+     * Advance the Rotors and translate an index (numerical equivalent of the 
+     * letter) using the machine, then update the Rotor Spinners to match.
      * @param index to translate.
      * @return the translated index.
      */
-    private int translatePipeline(int index) {
-        if (isShow())
-            System.out.print("Key: " + Rotor.indexToString(index) + "  ");
+    public int translate(int index) {
+        final int output = machine.translate(index);
+        syncRotorOffsets();
+        journal(KeyJournal.KEY, index);
 
-        for (Translation translator : pipeline)
-            index = translator.translate(index);
+        return output;
+    }
 
-        if (isShow())
-            System.out.println("Lamp: " + Rotor.indexToString(index));
+    /**
+     * Translate a buffer of characters using the machine, then update the 
+     * Rotor Spinners once at the end. Non-letters are copied unchanged.
+     * @param src buffer of characters to translate.
+     * @param off offset of the first character in both buffers.
+     * @param len number of characters to translate.
+     * @param dst buffer to receive the translated characters.
+     */
+    public void translate(char[] src, int off, int len, char[] dst) {
+        machine.translate(src, off, len, dst);
+        syncRotorOffsets();
+        journal(KeyJournal.BULK, 0);
+    }
 
-        return index;
+    /**
+     * Translate a buffer of ASCII bytes using the machine, then update the 
+     * Rotor Spinners once at the end. Non-letters are copied unchanged.
+     * @param src buffer of ASCII bytes to translate.
+     * @param off offset of the first byte in both buffers.
+     * @param len number of bytes to translate.
+     * @param dst buffer to receive the translated bytes.
+     */
+    public void translate(byte[] src, int off, int len, byte[] dst) {
+        machine.translate(src, off, len, dst);
+        syncRotorOffsets();
+        journal(KeyJournal.BULK, 0);
     }
 
     /**
-     * Advance the Rotor Spinners then update the Rotors to match.
+     * Lockdown all the settings ready for translation. This involves building 
+     * letter mappings as necessary and resolving the selected wheels to 
+     * Rotor handles, then loading the machine with the selected Rotors, ring 
+     * settings, offsets, plugboard and reflector.
      */
-    private void updatePipeline() {
-        advanceRotors();
+    private void lockdownSettings() {
+        lockdownPlugboard();
+        lockdownReflector();
+        lockdownRotors();
 
-        for (int i = 0; i < ROTOR_COUNT; ++i) {
-            int offset = getRotorIndex(i);
+        machine.setPlugboard(plugboardMap);
+        machine.setReflector(reflectorMap);
+        machine.setFourthWheel(fourthWheel);
+        machine.setShow(show);
 
-            for (Translation translator : pipeline)
-                translator.conditionallyUpdate(i, offset);
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            machine.setRotor(i, registry.getRotor(rotorHandles[i]));
+            machine.setRingSetting(i, getRingIndex(i));
+            machine.setOffset(i, getRotorIndex(i));
         }
     }
 
     /**
-     * Advance the Rotors and translate an index (numerical equivalent of the 
-     * letter) through the pipeline.
-     * @param index to translate.
-     * @return the translated index.
+     * Set the encipher state and lockdown all the data if we are about to 
+     * translate keys.
+     * @param state
      */
-    public int translate(int index) {
-        updatePipeline();
-        return translatePipeline(index);
+    public void setEncipher(boolean state) {
+        // System.out.println("setEncipher(" + state + ").");
+        encipher = state;
+        if (encipher)
+            lockdownSettings();
     }
 
     /**
-     * Build the pipeline of Mappers (Rotors) including the identifiers for 
-     * offset updates and the direction of translation.
+     * Initialize "Translation" panel.
      */
-    private void buildPipeline() {
-
-        pipeline.clear();
-
-        Rotor slow = getRotor(rotors, getWheelChoice(SLOW));
-
-        Rotor left = getRotor(rotors, getWheelChoice(LEFT));
-        Rotor middle = getRotor(rotors, getWheelChoice(MIDDLE));
-        Rotor right = getRotor(rotors, getWheelChoice(RIGHT));
+    private void initializeEncipher() {
+    }
 
-        pipeline.add(new Translation(OTHER, plugboard, Mapper.RIGHT_TO_LEFT));
 
-        pipeline.add(new Translation(RIGHT, right, Mapper.RIGHT_TO_LEFT));
-        pipeline.add(new Translation(MIDDLE, middle, Mapper.RIGHT_TO_LEFT));
-        pipeline.add(new Translation(LEFT, left, Mapper.RIGHT_TO_LEFT));
 
-        if (fourthWheel)
-            pipeline.add(new Translation(SLOW, slow, Mapper.RIGHT_TO_LEFT));
+    /************************************************************************
+     * Support code for the key journal.
+     */
 
-        pipeline.add(new Translation(OTHER, reflector, Mapper.RIGHT_TO_LEFT));
+    private KeyJournal journal = null;
+    private final int[] journalOffsets = new int[ROTOR_COUNT];
 
-        if (fourthWheel)
-            pipeline.add(new Translation(SLOW, slow, Mapper.LEFT_TO_RIGHT));
+    /**
+     * Open the key journal and replay it to recover the rotor offsets lost 
+     * if the previous session did not shut down cleanly, then compact it 
+     * into the settings data file. Without a journal the offsets are only 
+     * saved on shutdown.
+     */
+    private void openJournal() {
+        try {
+            final KeyJournal opened = new KeyJournal(Paths.get(getJournalFile()));
 
-        pipeline.add(new Translation(LEFT, left, Mapper.LEFT_TO_RIGHT));
-        pipeline.add(new Translation(MIDDLE, middle, Mapper.LEFT_TO_RIGHT));
-        pipeline.add(new Translation(RIGHT, right, Mapper.LEFT_TO_RIGHT));
+            final int[] offsets = opened.replay();
+            if (offsets != null) {
+                for (int i = 0; i < ROTOR_COUNT; ++i)
+                    setRotorIndex(i, offsets[i]);
+            }
 
-        pipeline.add(new Translation(OTHER, plugboard, Mapper.LEFT_TO_RIGHT));
+            journal = opened;
+            if (offsets != null)
+                compactJournal();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
     }
 
     /**
-     * Lockdown all the settings ready for translation. This involves building 
-     * letter mappings as necessary, constructing needed Mappers, finalizing
-     * ring settings and building the pipeline.
+     * Record an event and the resulting rotor offsets in the journal, 
+     * compacting it in the background when it is getting full.
+     * @param type of the event.
+     * @param value of the event.
      */
-    private void lockdownSettings() {
-        lockdownPlugboard();
-        lockdownReflector();
-
-        plugboard = new Mapper("Plugboard", plugboardMap);
-        reflector = new Mapper("Reflector", reflectorMap);
+    private void journal(byte type, int value) {
+        if (journal == null)
+            return;
 
-        Rotor rotor;
-        for (int i = 0; i < ROTOR_COUNT; ++i) {
-            rotor = getRotor(rotors, getWheelChoice(i));
-            rotor.setRingSetting(getRingIndex(i));
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            journalOffsets[i] = getRotorIndex(i);
 
-            // rotor.dumpRightMap();
-            // rotor.dumpLeftMap();
+        if (journal.append(type, value, journalOffsets)) {
+            final DataStore dataStore = DataStore.capture(this);
+            final Path path = Paths.get(getSettingsFile());
+            journal.compact(() -> dataStore.write(path));
         }
-
-        buildPipeline();
     }
 
     /**
-     * Set the encipher state and lockdown all the data if we are about to 
-     * translate keys.
-     * @param state
+     * Save the settings data file and, if successful, discard the journal 
+     * records it now covers. The save runs on the journal's flusher thread, 
+     * after any pending compaction, and this waits for it.
+     * @return true if the settings data file was saved, false otherwise.
      */
-    public void setEncipher(boolean state) {
-        // System.out.println("setEncipher(" + state + ").");
-        encipher = state;
-        if (encipher)
-            lockdownSettings();
+    public boolean compactJournal() {
+        if (journal == null)
+            return DataStore.writeData(this);
+
+        final DataStore dataStore = DataStore.capture(this);
+        final Path path = Paths.get(getSettingsFile());
+        try {
+            return journal.compact(() -> dataStore.write(path)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage());
+        }
+
+        return false;
     }
 
     /**
-     * Initialize "Translation" panel.
+     * Stop the journal flusher and close the journal file.
      */
-    private void initializeEncipher() {
+    public void closeJournal() {
+        if (journal == null)
+            return;
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        journal = null;
     }
 
 
@@ -895,27 +831,25 @@ public class Model {
      */
 
     public void dumpRotorWiring() {
-        for (Rotor rotor : commercial)
+        for (Rotor rotor : registry.getCommercial())
             System.out.println(rotor.toString());
         System.out.println();
-        for (Rotor rotor : rocket)
+        for (Rotor rotor : registry.getRocket())
             System.out.println(rotor.toString());
         System.out.println();
-        for (Rotor rotor : swissK)
+        for (Rotor rotor : registry.getSwissK())
             System.out.println(rotor.toString());
         System.out.println();
-        for (Rotor rotor : m3)
+        for (Rotor rotor : registry.getM3())
             System.out.println(rotor.toString());
         System.out.println();
-        for (Rotor rotor : m4)
+        for (Rotor rotor : registry.getM4())
             System.out.println(rotor.toString());
         System.out.println();
     }
 
     public int test1(char key) {
-        updatePipeline();
-        return translatePipeline(Rotor.charToIndex(key));
-        // return translate(Rotor.charToIndex(key));
+        return translate(Rotor.charToIndex(key));
     }
 
     public int test5() {
@@ -29,15 +29,24 @@
  */
 package phillockett65.Enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Spinner;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
 import javafx.scene.control.TitledPane;
@@ -45,6 +54,8 @@ import javafx.scene.control.ToggleButton;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
 
 public class PrimaryController {
 
@@ -101,6 +112,7 @@ public class PrimaryController {
         initializeRotorSetup();
         initializePlugboardConnections();
         initializeEncipher();
+        initializeBulkTranslation();
     }
 
     /**
@@ -117,7 +129,13 @@ public class PrimaryController {
      * Called by Application on shutdown.
      */
     public void saveState() {
-        DataStore.writeData(model);
+        if (isTranslating()) {
+            bulkTask.cancel();
+            refreshBulkTranslation();
+        }
+
+        model.compactJournal();
+        model.closeJournal();
     }
 
     /**
@@ -575,7 +593,7 @@ public class PrimaryController {
 
         wheel0Choicebox.setDisable(disable);
         ringSetting0Spinner.setDisable(disable);
-        rotorOffset0Spinner.setDisable(!fourthWheel);
+        rotorOffset0Spinner.setDisable(!fourthWheel || isTranslating());
     }
 
     /**
@@ -778,6 +796,7 @@ public class PrimaryController {
         editablePlugboard(!encipher);
         editableFourthWheel();
         editableTranslation(!encipher);
+        editableBulkTranslation();
 
         if (encipher) {
             encipherButton.setText("Press to Change Settings");
@@ -798,7 +817,7 @@ public class PrimaryController {
      * Only allow the encipherButton to be selected if the config is valid.
      */
     private void syncEncipherButton() {
-        encipherButton.setDisable(!model.isConfigValid());
+        encipherButton.setDisable(!model.isConfigValid() || isTranslating());
     }
 
     /**
@@ -818,6 +837,10 @@ public class PrimaryController {
     public void keyPress(KeyCode keyCode) {
         final boolean encipher = model.isEncipher();
 
+        // Typing into the bulk text, or a bulk translation, takes precedence.
+        if (isTranslating() || bulkInputTextArea.isFocused())
+            return;
+
         if (encipher) {
             if (currentKey == -1) {
                 currentKey = Mapper.stringToIndex(keyCode.getChar());
@@ -842,4 +865,214 @@ public class PrimaryController {
         }
     }
 
+
+
+
+    /************************************************************************
+     * Support code for "Bulk Translation" panel.
+     */
+
+    // Refresh rate of the output and spinners during a bulk translation.
+    private static final Duration REFRESH_INTERVAL = Duration.millis(100);
+
+    // Most characters of the output shown, all of it can be saved.
+    private static final int DISPLAY_LIMIT = 100_000;
+
+    private TranslationTask bulkTask = null;
+    private Timeline bulkRefresh;
+    private File bulkFile = null;
+    private char[] bulkOutput = null;
+    private int bulkShown = 0;
+
+    @FXML
+    private TitledPane bulkTranslationTitledPane;
+
+    @FXML
+    private Button bulkLoadButton;
+
+    @FXML
+    private Button bulkTranslateButton;
+
+    @FXML
+    private Button bulkSaveButton;
+
+    @FXML
+    private ProgressBar bulkProgressBar;
+
+    @FXML
+    private TextArea bulkInputTextArea;
+
+    @FXML
+    private TextArea bulkOutputTextArea;
+
+    @FXML
+    private Label bulkStatusLabel;
+
+    @FXML
+    void bulkLoadButtonActionPerformed(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Load Text to Translate");
+        final File file = chooser.showOpenDialog(bulkLoadButton.getScene().getWindow());
+        if (file == null)
+            return;
+
+        // The file is read by the background task, not into the text area.
+        bulkInputTextArea.clear();
+        bulkFile = file;
+        bulkStatusLabel.setText("Loaded " + file.getName() + " (" + file.length() + " bytes)");
+    }
+
+    @FXML
+    void bulkTranslateButtonActionPerformed(ActionEvent event) {
+        if (isTranslating())
+            bulkTask.cancel();
+        else
+            startBulkTranslation();
+    }
+
+    @FXML
+    void bulkSaveButtonActionPerformed(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save Translated Text");
+        final File file = chooser.showSaveDialog(bulkSaveButton.getScene().getWindow());
+        if (file == null)
+            return;
+
+        try {
+            Files.writeString(file.toPath(), new String(bulkOutput));
+            bulkStatusLabel.setText("Saved " + bulkOutput.length + " characters to " + file.getName());
+        } catch (IOException e) {
+            bulkStatusLabel.setText("Save failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if a bulk translation is running.
+     */
+    private boolean isTranslating() {
+        return bulkTask != null;
+    }
+
+    /**
+     * Translate the loaded file, or the text in the input area, on a 
+     * background thread using a copy of the machine.
+     */
+    private void startBulkTranslation() {
+        EnigmaMachine machine = new EnigmaMachine(model.getMachine());
+        if (bulkFile != null)
+            bulkTask = new TranslationTask(machine, bulkFile.toPath());
+        else
+            bulkTask = new TranslationTask(machine, bulkInputTextArea.getText().toCharArray());
+
+        bulkTask.setOnSucceeded(e -> finishBulkTranslation());
+        bulkTask.setOnCancelled(e -> finishBulkTranslation());
+        bulkTask.setOnFailed(e -> finishBulkTranslation());
+
+        bulkOutputTextArea.clear();
+        bulkOutput = null;
+        bulkShown = 0;
+        bulkProgressBar.progressProperty().bind(bulkTask.progressProperty());
+        bulkStatusLabel.setText("Translating");
+
+        Thread thread = new Thread(bulkTask, "TranslationTask");
+        thread.setDaemon(true);
+        thread.start();
+
+        bulkRefresh.play();
+        updateGUIState();
+        syncEncipherButton();
+    }
+
+    /**
+     * Bring the output area and the rotor offsets up to date with the latest 
+     * progress of the bulk translation. Called at the refresh rate rather 
+     * than for every letter, only the newly translated characters are added 
+     * to the output area.
+     * @return the number of characters translated.
+     */
+    private int refreshBulkTranslation() {
+        final TranslationTask.Progress progress = bulkTask.getLatestProgress();
+        if (progress == null)
+            return 0;
+
+        final int done = progress.getDone();
+        final int shown = Math.min(done, DISPLAY_LIMIT);
+        if (shown > bulkShown) {
+            bulkOutputTextArea.appendText(new String(bulkTask.getOutput(), bulkShown, shown - bulkShown));
+            bulkShown = shown;
+        }
+
+        for (int i = 0; i < Model.ROTOR_COUNT; ++i)
+            model.setRotorIndex(i, progress.getOffset(i));
+
+        bulkStatusLabel.setText("Translated " + done + " characters");
+
+        return done;
+    }
+
+    /**
+     * Complete a bulk translation, whether it succeeded, was cancelled or 
+     * failed, keeping whatever output was translated.
+     */
+    private void finishBulkTranslation() {
+        bulkRefresh.stop();
+        bulkProgressBar.progressProperty().unbind();
+
+        final int done = refreshBulkTranslation();
+        if (done > 0)
+            bulkOutput = Arrays.copyOf(bulkTask.getOutput(), done);
+
+        if (bulkTask.getException() != null)
+            bulkStatusLabel.setText("Translation failed: " + bulkTask.getException().getMessage());
+        else if (bulkTask.isCancelled())
+            bulkStatusLabel.setText("Cancelled after " + done + " characters");
+        else if (done > DISPLAY_LIMIT)
+            bulkStatusLabel.setText("Translated " + done + " characters, showing the first " + DISPLAY_LIMIT);
+
+        bulkTask = null;
+        updateGUIState();
+        syncEncipherButton();
+    }
+
+    /**
+     * Control what can be used depending on whether we are translating keys 
+     * and whether a bulk translation is running. The rotor offsets are owned 
+     * by a running bulk translation.
+     */
+    private void editableBulkTranslation() {
+        final boolean translating = isTranslating();
+        final boolean encipher = model.isEncipher();
+
+        bulkLoadButton.setDisable(translating);
+        bulkInputTextArea.setEditable(!translating);
+        bulkTranslateButton.setDisable(!encipher && !translating);
+        bulkTranslateButton.setText(translating ? "Cancel" : "Translate");
+        bulkSaveButton.setDisable(translating || (bulkOutput == null));
+
+        rotorOffset1Spinner.setDisable(translating);
+        rotorOffset2Spinner.setDisable(translating);
+        rotorOffset3Spinner.setDisable(translating);
+    }
+
+    /**
+     * Initialize "Bulk Translation" panel.
+     */
+    private void initializeBulkTranslation() {
+        bulkRefresh = new Timeline(new KeyFrame(REFRESH_INTERVAL, e -> refreshBulkTranslation()));
+        bulkRefresh.setCycleCount(Animation.INDEFINITE);
+
+        // Typing or pasting replaces any loaded file.
+        bulkInputTextArea.textProperty().addListener( (v, oldValue, newValue) -> {
+            if (!newValue.isEmpty())
+                bulkFile = null;
+        });
+
+        bulkTranslationTitledPane.setTooltip(new Tooltip("Translate a block of text or a file in the background"));
+        bulkLoadButton.setTooltip(new Tooltip("Select a text file to translate"));
+        bulkTranslateButton.setTooltip(new Tooltip("Translate the text using the current settings, or cancel the translation"));
+        bulkSaveButton.setTooltip(new Tooltip("Save all of the translated text to a file"));
+
+        editableBulkTranslation();
+    }
+
 }
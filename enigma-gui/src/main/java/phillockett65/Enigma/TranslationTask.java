@@ -0,0 +1,153 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TranslationTask is a class that translates a large block of text on a
+ * background thread using its own copy of the machine, so the GUI stays
+ * responsive. The text is translated a chunk at a time. After each chunk
+ * the number of characters translated and the rotor offsets are published
+ * for the GUI to pick up at its own refresh rate, rather than the GUI being
+ * updated for every letter.
+ *
+ * The count and the offsets are published together as a Progress, so the
+ * output up to the count is complete and the offsets are those of the
+ * machine after translating it, even if the task has been cancelled.
+ */
+package phillockett65.Enigma;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javafx.concurrent.Task;
+
+public class TranslationTask extends Task<char[]> {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final EnigmaMachine machine;
+    private final Path path;
+    private char[] input;
+
+    private volatile char[] output = null;
+    private volatile Progress progress = null;
+
+
+    /**
+     * Progress is a class that captures the number of characters translated 
+     * and the rotor offsets after translating them.
+     */
+    public static class Progress {
+        private final int done;
+        private final int[] offsets;
+
+        public Progress(int done, int[] offsets) {
+            this.done = done;
+            this.offsets = offsets;
+        }
+
+        public int getDone() { return done; }
+        public int getOffset(int pos) { return offsets[pos]; }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor to translate text.
+     * @param machine to translate with, which must not be used elsewhere.
+     * @param input text to translate.
+     */
+    public TranslationTask(EnigmaMachine machine, char[] input) {
+        this.machine = machine;
+        this.path = null;
+        this.input = input;
+    }
+
+    /**
+     * Constructor to translate the contents of a file, which is read by the
+     * background thread.
+     * @param machine to translate with, which must not be used elsewhere.
+     * @param path of the file to translate.
+     */
+    public TranslationTask(EnigmaMachine machine, Path path) {
+        this.machine = machine;
+        this.path = path;
+        this.input = null;
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    /**
+     * @return the translated text so far, valid up to the count of the 
+     * latest Progress, or null if translation has not started.
+     */
+    public char[] getOutput() { return output; }
+
+    /**
+     * @return the latest Progress, or null if translation has not started.
+     */
+    public Progress getLatestProgress() { return progress; }
+
+    private void publish(int done) {
+        int[] offsets = new int[EnigmaMachine.ROTOR_COUNT];
+        for (int i = 0; i < offsets.length; ++i)
+            offsets[i] = machine.getOffset(i);
+
+        progress = new Progress(done, offsets);
+    }
+
+
+    /************************************************************************
+     * Support code for the background thread.
+     */
+
+    @Override
+    protected char[] call() throws Exception {
+        if (input == null)
+            input = Files.readString(path).toCharArray();
+
+        if (!machine.isShow())
+            machine.compile();
+
+        final int length = input.length;
+        output = new char[length];
+        publish(0);
+        updateProgress(0, length);
+
+        for (int off = 0; off < length; off += CHUNK_SIZE) {
+            if (isCancelled())
+                break;
+
+            final int count = Math.min(CHUNK_SIZE, length - off);
+            machine.translate(input, off, count, output);
+
+            publish(off + count);
+            updateProgress(off + count, length);
+        }
+
+        return output;
+    }
+
+}
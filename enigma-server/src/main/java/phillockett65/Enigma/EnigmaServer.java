@@ -0,0 +1,351 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaServer is a class that exposes the cipher as a local HTTP service
+ * using the JDK's built-in HTTP server. A client creates a session with the
+ * machine settings, then posts text to the session and gets the translated
+ * text back with the rotor offsets of the session advanced, as the GUI does
+ * for each key press.
+ *
+ *     POST   /sessions                 create a session from form encoded
+ *                                      settings (wheels, rings, offsets,
+ *                                      reflector, pairs, plugs), returns
+ *                                      the session id
+ *     GET    /sessions/{id}            returns the rotor offsets
+ *     POST   /sessions/{id}/translate  translates the body, returns the
+ *                                      translated text
+ *     DELETE /sessions/{id}            removes the session
+ *
+ * The rotor offsets are also returned in the Rotor-Offsets header. Each
+ * request is handled on a virtual thread when the JVM supports them (Java
+ * 21 and later), otherwise on a fixed pool of platform threads.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class EnigmaServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int MAX_BODY = 8 * 1024 * 1024;
+
+    private static final String SESSIONS = "/sessions";
+    private static final String TRANSLATE = "/translate";
+    private static final String OFFSETS = "Rotor-Offsets";
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+    private final SessionRegistry registry;
+    private final ExecutorService executor;
+    private final HttpServer server;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor, the server is not started.
+     * @param address to listen on, port 0 picks a free port.
+     * @param registry of the sessions.
+     */
+    public EnigmaServer(InetSocketAddress address, SessionRegistry registry) throws IOException {
+        this.registry = registry;
+
+        executor = newRequestExecutor();
+        server = HttpServer.create(address, 0);
+        server.createContext(SESSIONS, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Make the JDK's HTTP server set TCP_NODELAY, without which small 
+     * responses wait for a delayed ACK. This sets a JVM wide system property 
+     * that the JDK only reads when the first HttpServer is created, so it 
+     * must be called before any HttpServer exists in the JVM, typically at 
+     * the start of main. A value given on the command line is kept.
+     */
+    public static void enableNoDelay() {
+        if (System.getProperty(NODELAY) == null)
+            System.setProperty(NODELAY, "true");
+    }
+
+    /**
+     * Create an executor that runs each request on a new virtual thread if 
+     * the JVM supports them. Virtual threads are looked up reflectively so 
+     * that the server still builds and runs on Java 11.
+     * @return the executor for the requests.
+     */
+    public static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            final int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "EnigmaServer-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public SessionRegistry getRegistry() { return registry; }
+    public int getPort() { return server.getAddress().getPort(); }
+
+
+    /************************************************************************
+     * Support code for requests.
+     */
+
+    /**
+     * Read the request body.
+     * @param exchange of the request.
+     * @return the body, exactly as long as the content.
+     * @throws IllegalStateException if the body is longer than MAX_BODY.
+     */
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int length = 0;
+            int count;
+            while ((count = input.read(buffer, length, buffer.length - length)) != -1) {
+                length += count;
+                if (length == buffer.length) {
+                    if (length == MAX_BODY) {
+                        // Only a body with more than MAX_BODY bytes is too large.
+                        if (input.read() != -1)
+                            throw new IllegalStateException("Body too large");
+                        break;
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(MAX_BODY, length * 2));
+                }
+            }
+
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    /**
+     * Parse form encoded settings, using the same names as the command line 
+     * options without the leading "--".
+     * @param form encoded settings, e.g. "wheels=I,II,III&amp;rings=AAA".
+     * @return the settings.
+     */
+    private static MachineSettings parseSettings(String form) {
+        MachineSettings settings = new MachineSettings();
+        if (form.isEmpty())
+            return settings;
+
+        for (String field : form.split("&")) {
+            final int equals = field.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Missing value for " + field);
+
+            final String name = URLDecoder.decode(field.substring(0, equals), StandardCharsets.UTF_8);
+            final String value = URLDecoder.decode(field.substring(equals + 1), StandardCharsets.UTF_8);
+            switch (name) {
+            case "wheels":      settings.setWheels(value); break;
+            case "rings":       settings.setRingSettings(value); break;
+            case "offsets":     settings.setRotorOffsets(value); break;
+            case "reflector":   settings.setReflectorChoice(value); break;
+            case "pairs":       settings.setPairs(value); break;
+            case "plugs":       settings.setPlugs(value); break;
+            default:
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+
+        return settings;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void create(HttpExchange exchange) throws IOException {
+        final String form = new String(readBody(exchange), StandardCharsets.UTF_8).trim();
+        final Session session = registry.create(parseSettings(form));
+
+        exchange.getResponseHeaders().set("Location", SESSIONS + "/" + session.getId());
+        exchange.getResponseHeaders().set(OFFSETS, session.getOffsets());
+        send(exchange, 201, session.getId());
+    }
+
+    private void translate(HttpExchange exchange, Session session) throws IOException {
+        final byte[] body = readBody(exchange);
+        final String offsets;
+        synchronized (session) {
+            session.translate(registry.getCache(), body, body.length);
+            offsets = session.getOffsets();
+        }
+
+        exchange.getResponseHeaders().set(OFFSETS, offsets);
+        send(exchange, 200, body);
+    }
+
+    /**
+     * Route a request to the matching operation.
+     * @param exchange of the request.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+
+            if (path.equals(SESSIONS) || path.equals(SESSIONS + "/")) {
+                if (method.equals("POST"))
+                    create(exchange);
+                else
+                    send(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            String id = path.substring(SESSIONS.length() + 1);
+            final boolean translate = id.endsWith(TRANSLATE);
+            if (translate)
+                id = id.substring(0, id.length() - TRANSLATE.length());
+
+            final Session session = registry.get(id);
+            if (session == null) {
+                send(exchange, 404, "Unknown session: " + id);
+            } else if (translate && method.equals("POST")) {
+                translate(exchange, session);
+            } else if (!translate && method.equals("GET")) {
+                exchange.getResponseHeaders().set(OFFSETS, session.getOffsets());
+                send(exchange, 200, session.getOffsets());
+            } else if (!translate && method.equals("DELETE")) {
+                registry.remove(id);
+                send(exchange, 204, "");
+            } else {
+                send(exchange, 405, "Method not allowed");
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            send(exchange, e.getMessage().equals("Body too large") ? 413 : 503, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, wait briefly for those in progress and remove 
+     * all the sessions.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        registry.close();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: EnigmaServer [--port <n>] [--idle <seconds>] [--max-sessions <n>]");
+        System.err.println("  --port <n>          port to listen on (default " + DEFAULT_PORT + "), on the loopback");
+        System.err.println("                      address only");
+        System.err.println("  --idle <seconds>    remove sessions unused for this long (default " + SessionRegistry.DEFAULT_IDLE_TIMEOUT + ")");
+        System.err.println("  --max-sessions <n>  maximum number of sessions (default " + SessionRegistry.DEFAULT_MAX_SESSIONS + ")");
+    }
+
+    public static void main(String[] args) {
+        enableNoDelay();
+
+        int port = DEFAULT_PORT;
+        long idle = SessionRegistry.DEFAULT_IDLE_TIMEOUT;
+        int maxSessions = SessionRegistry.DEFAULT_MAX_SESSIONS;
+
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+
+                switch (args[i]) {
+                case "--port":          port = Integer.parseInt(args[++i]); break;
+                case "--idle":          idle = Long.parseLong(args[++i]); break;
+                case "--max-sessions":  maxSessions = Integer.parseInt(args[++i]); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            SessionRegistry registry = new SessionRegistry(new MachineCache(new RotorRegistry()), idle, maxSessions);
+            EnigmaServer server = new EnigmaServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), registry);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+
+            System.out.println("Listening on http://localhost:" + server.getPort() + SESSIONS);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            usage();
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Session is a class that captures the state of one client of the
+ * EnigmaServer: the settings of its machine and the current rotor offsets.
+ * The machine itself is borrowed from the MachineCache for each request, so
+ * an idle session only costs its settings and sessions sharing a key share
+ * the compiled machine. Requests on the same session are serialized so that
+ * the rotor offsets advance as if the text had been typed in order.
+ */
+package phillockett65.Enigma;
+
+public class Session {
+
+    private final String id;
+    private final MachineSettings settings;
+    private volatile long lastUsed;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param id of the session.
+     * @param settings of the machine, owned by the session from now on.
+     */
+    public Session(String id, MachineSettings settings) {
+        this.id = id;
+        this.settings = settings;
+        touch();
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public String getId() { return id; }
+    public long getLastUsed() { return lastUsed; }
+
+    /**
+     * @return the current rotor offsets as letters, e.g. "ABCD".
+     */
+    public synchronized String getOffsets() {
+        StringBuilder builder = new StringBuilder(EnigmaMachine.ROTOR_COUNT);
+        for (int i = 0; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            builder.append(Mapper.indexToString(settings.getRotorIndex(i)));
+
+        return builder.toString();
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Record that the session has been used, to keep it from being evicted.
+     */
+    public void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Translate a buffer of ASCII bytes in place and advance the rotor 
+     * offsets, as if the text had been typed. Non-letters, including the 
+     * bytes of any multi-byte characters, are copied unchanged.
+     * @param cache to borrow the machine from.
+     * @param buffer of bytes to translate.
+     * @param len number of bytes to translate.
+     */
+    public synchronized void translate(MachineCache cache, byte[] buffer, int len) {
+        touch();
+
+        EnigmaMachine machine = cache.get(settings);
+        machine.translate(buffer, 0, len, buffer);
+
+        for (int i = EnigmaMachine.LEFT; i < EnigmaMachine.ROTOR_COUNT; ++i)
+            settings.setRotorIndex(i, machine.getOffset(i));
+    }
+
+}
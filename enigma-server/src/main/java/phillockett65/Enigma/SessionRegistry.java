@@ -0,0 +1,176 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SessionRegistry is a class that holds the sessions of the EnigmaServer in
+ * a concurrent map keyed by a random session id. Sessions that have not been
+ * used for the idle timeout are evicted by a background sweep, and the
+ * number of sessions is bounded so that a misbehaving client cannot exhaust
+ * the memory. The machines of all the sessions come from a shared
+ * MachineCache.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionRegistry implements Closeable {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 600;
+    public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+    private final MachineCache cache;
+    private final long idleTimeout;
+    private final int maxSessions;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor, starts the background sweep for idle sessions.
+     * @param cache to borrow the machines from.
+     * @param idleTimeout seconds after which an unused session is evicted.
+     * @param maxSessions maximum number of sessions.
+     */
+    public SessionRegistry(MachineCache cache, long idleTimeout, int maxSessions) {
+        if ((idleTimeout < 1) || (maxSessions < 1))
+            throw new IllegalArgumentException("Session bounds must be positive");
+
+        this.cache = cache;
+        this.idleTimeout = idleTimeout;
+        this.maxSessions = maxSessions;
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SessionRegistry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long period = Math.max(1, idleTimeout / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor using the default bounds.
+     * @param cache to borrow the machines from.
+     */
+    public SessionRegistry(MachineCache cache) {
+        this(cache, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_SESSIONS);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public MachineCache getCache() { return cache; }
+    public long getIdleTimeout() { return idleTimeout; }
+    public int getMaxSessions() { return maxSessions; }
+
+    public int getSize() { return sessions.size(); }
+    public long getEvictions() { return evictions.get(); }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Create a session. The settings are checked by getting a machine for 
+     * them from the cache, which also warms the cache for the first request.
+     * @param settings of the machine, owned by the session from now on.
+     * @return the new session.
+     * @throws IllegalArgumentException if the settings are not valid.
+     * @throws IllegalStateException if there are too many sessions.
+     */
+    public Session create(MachineSettings settings) {
+        if (sessions.size() >= maxSessions)
+            throw new IllegalStateException("Too many sessions");
+
+        cache.get(settings);
+
+        Session session = new Session(UUID.randomUUID().toString(), settings);
+        sessions.put(session.getId(), session);
+
+        return session;
+    }
+
+    /**
+     * @param id of the session.
+     * @return the session, or null if there is no session with that id.
+     */
+    public Session get(String id) {
+        Session session = sessions.get(id);
+        if (session != null)
+            session.touch();
+
+        return session;
+    }
+
+    /**
+     * @param id of the session to remove.
+     * @return true if the session was removed, false if there was none.
+     */
+    public boolean remove(String id) {
+        return sessions.remove(id) != null;
+    }
+
+    /**
+     * Remove every session that has not been used for the idle timeout.
+     * @return the number of sessions evicted.
+     */
+    public int evictIdle() {
+        final long oldest = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleTimeout);
+
+        int count = 0;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getLastUsed() - oldest < 0) {
+                iterator.remove();
+                count++;
+            }
+        }
+        evictions.addAndGet(count);
+
+        return count;
+    }
+
+    /**
+     * Stop the background sweep and remove all the sessions.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        sessions.clear();
+    }
+
+}
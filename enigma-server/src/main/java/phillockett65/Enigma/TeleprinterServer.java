@@ -0,0 +1,458 @@
+/*  Enigma - a JavaFX based playing card image generator.
+ *
+ *  Copyright 2022 Philip Lockett.
+ *
+ *  This file is part of Enigma.
+ *
+ *  Enigma is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TeleprinterServer is a class that simulates an online cipher link over
+ * TCP. Every connection gets its own machine built from the same settings,
+ * so each connection starts at the configured rotor offsets, and every
+ * letter read from the connection is translated as if it had been typed.
+ * Anything else is passed through unchanged. By default the translated
+ * bytes are written back to the same connection. If a forward address is
+ * given, they are written to a new connection to that address instead, and
+ * whatever comes back is translated by a second machine and written back to
+ * the client. Two servers with the same settings, one forwarding to the
+ * other, therefore encipher the traffic between them and deliver it in the
+ * clear at both ends.
+ *
+ * All connections are served by a single thread using a Selector. Each
+ * direction of a connection has one direct ByteBuffer, taken from a pool
+ * and translated in place, so nothing is allocated per byte read. When a
+ * buffer is full its source is no longer read until the sink catches up.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+public class TeleprinterServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8023;
+    public static final int BUFFER_SIZE = 4096;
+
+    private final MachineCache cache;
+    private final MachineSettings settings;
+    private final InetSocketAddress forward;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    private volatile int connections = 0;
+    private volatile long accepted = 0;
+    private volatile long bytes = 0;
+
+
+    /************************************************************************
+     * Support code for the "Flow" class.
+     */
+
+    /**
+     * Flow is one direction of a link: bytes are read from the source, 
+     * translated in place and written to the sink.
+     */
+    private class Flow {
+        private final SocketChannel source;
+        private final SocketChannel sink;
+        private final EnigmaMachine machine;
+        private ByteBuffer buffer;
+        private boolean eof = false;
+        private boolean done = false;
+
+        public Flow(SocketChannel source, SocketChannel sink) {
+            this.source = source;
+            this.sink = sink;
+            machine = cache.get(settings);
+            buffer = acquire();
+        }
+
+        public boolean isDone() { return done; }
+        public boolean wantsRead() { return !eof && buffer.hasRemaining(); }
+        public boolean wantsWrite() { return !done && (buffer.position() > 0); }
+
+        /**
+         * Read what is available into the buffer, translate it and write 
+         * as much of the buffer as the sink accepts. At the end of the 
+         * source, the output of the sink is shut down once the buffer has 
+         * been written.
+         * @param connected true if the sink can be written to.
+         */
+        public void pump(boolean connected) throws IOException {
+            if (wantsRead()) {
+                final int start = buffer.position();
+                final int count = source.read(buffer);
+                if (count < 0)
+                    eof = true;
+                else if (count > 0)
+                    machine.translate(buffer, start, count);
+            }
+
+            if (!connected)
+                return;
+
+            if (buffer.position() > 0) {
+                buffer.flip();
+                bytes += sink.write(buffer);
+                buffer.compact();
+            }
+
+            if (eof && (buffer.position() == 0) && (!done)) {
+                sink.shutdownOutput();
+                done = true;
+            }
+        }
+
+        public void release() {
+            if (buffer != null) {
+                TeleprinterServer.this.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the "Link" class.
+     */
+
+    /**
+     * Link is a client connection, plus the connection to the forward 
+     * address if there is one. It is the attachment of the SelectionKeys of 
+     * both connections.
+     */
+    private class Link {
+        private final SocketChannel client;
+        private final SelectionKey clientKey;
+        private final Flow up;
+
+        private final SocketChannel remote;
+        private final SelectionKey remoteKey;
+        private final Flow down;
+        private boolean connected;
+
+        public Link(SocketChannel client) throws IOException {
+            this.client = client;
+            clientKey = client.register(selector, 0, this);
+
+            if (forward == null) {
+                remote = null;
+                remoteKey = null;
+                up = new Flow(client, client);
+                down = null;
+                connected = true;
+            } else {
+                remote = SocketChannel.open();
+                try {
+                    remote.configureBlocking(false);
+                    remote.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    connected = remote.connect(forward);
+                    remoteKey = remote.register(selector, 0, this);
+                } catch (IOException e) {
+                    closeQuietly(remote);
+                    throw e;
+                }
+                up = new Flow(client, remote);
+                down = new Flow(remote, client);
+            }
+        }
+
+        /**
+         * Move whatever can be moved in both directions, then update the 
+         * interest of both keys, or close the link if both directions are 
+         * finished.
+         */
+        public void update() throws IOException {
+            if (!connected && remoteKey.isConnectable())
+                connected = remote.finishConnect();
+
+            up.pump(connected);
+            if ((down != null) && connected)
+                down.pump(true);
+
+            if (up.isDone() && ((down == null) || down.isDone())) {
+                close();
+                return;
+            }
+
+            if (down == null) {
+                clientKey.interestOps((up.wantsRead() ? SelectionKey.OP_READ : 0) |
+                    (up.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+            } else {
+                clientKey.interestOps((up.wantsRead() ? SelectionKey.OP_READ : 0) |
+                    (down.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+                if (!connected)
+                    remoteKey.interestOps(SelectionKey.OP_CONNECT);
+                else
+                    remoteKey.interestOps((down.wantsRead() ? SelectionKey.OP_READ : 0) |
+                        (up.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        public void close() {
+            if (!client.isOpen())
+                return;
+
+            closeQuietly(client);
+            if (remote != null)
+                closeQuietly(remote);
+
+            up.release();
+            if (down != null)
+                down.release();
+
+            connections--;
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor, the server is not started.
+     * @param address to listen on, port 0 picks a free port.
+     * @param cache to get the machines from.
+     * @param settings of the machine of every connection.
+     * @param forward address to forward the translated bytes to, or null to 
+     * write them back to the client.
+     * @throws IllegalArgumentException if the settings are not valid.
+     */
+    public TeleprinterServer(InetSocketAddress address, MachineCache cache, MachineSettings settings,
+        InetSocketAddress forward) throws IOException {
+        this.cache = cache;
+        this.settings = settings;
+        this.forward = forward;
+
+        // Fail now rather than on the first connection.
+        cache.get(settings);
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        loop = new Thread(this::run, "TeleprinterServer");
+        loop.setDaemon(true);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getPort() { return server.socket().getLocalPort(); }
+    public int getConnections() { return connections; }
+    public long getAccepted() { return accepted; }
+    public long getBytes() { return bytes; }
+
+
+    /************************************************************************
+     * Support code for the event loop.
+     */
+
+    private ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.push(buffer);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful can be done.
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            accepted++;
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            Link link = null;
+            try {
+                link = new Link(client);
+                connections++;
+                link.update();
+            } catch (IOException e) {
+                if (link != null)
+                    link.close();
+                else
+                    closeQuietly(client);
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    final Link link = (Link)key.attachment();
+                    try {
+                        link.update();
+                    } catch (IOException e) {
+                        link.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("TeleprinterServer stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys())
+                closeQuietly(key.channel());
+            closeQuietly(selector);
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public void start() {
+        loop.start();
+    }
+
+    /**
+     * Stop the event loop and close every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (!loop.isAlive()) {
+            closeQuietly(server);
+            closeQuietly(selector);
+            return;
+        }
+
+        selector.wakeup();
+        try {
+            loop.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: TeleprinterServer [settings] [--port <n>] [--forward <host:port>]");
+        System.err.println("  --port <n>              port to listen on (default " + DEFAULT_PORT + "), on the");
+        System.err.println("                          loopback address only");
+        System.err.println("  --forward <host:port>   write the translated bytes to a new connection to");
+        System.err.println("                          this address instead of back to the client");
+        System.err.println();
+        System.err.println("Settings:");
+        System.err.println("  --wheels <ids>      3 or 4 rotor ids, e.g. I,II,III or Beta,I,II,III");
+        System.err.println("  --rings <values>    ring settings as letters or numbers, e.g. AAA or 1,1,1");
+        System.err.println("  --offsets <values>  rotor offsets as letters or numbers");
+        System.err.println("  --reflector <id>    reflector id, e.g. \"Reflector B\"");
+        System.err.println("  --pairs <pairs>     12 reconfigurable reflector pairs, e.g. \"AB CD ...\"");
+        System.err.println("  --plugs <pairs>     plugboard pairs, e.g. \"AB CD EF\"");
+    }
+
+    private static InetSocketAddress parseAddress(String text) {
+        final int colon = text.lastIndexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("Expected host:port, not " + text);
+
+        return new InetSocketAddress(text.substring(0, colon), Integer.parseInt(text.substring(colon + 1)));
+    }
+
+    public static void main(String[] args) {
+        MachineSettings settings = new MachineSettings();
+        int port = DEFAULT_PORT;
+        InetSocketAddress forward = null;
+
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+
+                final String option = args[i];
+                final String value = args[++i];
+                switch (option) {
+                case "--wheels":    settings.setWheels(value); break;
+                case "--rings":     settings.setRingSettings(value); break;
+                case "--offsets":   settings.setRotorOffsets(value); break;
+                case "--reflector": settings.setReflectorChoice(value); break;
+                case "--pairs":     settings.setPairs(value); break;
+                case "--plugs":     settings.setPlugs(value); break;
+                case "--port":      port = Integer.parseInt(value); break;
+                case "--forward":   forward = parseAddress(value); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+
+            TeleprinterServer server = new TeleprinterServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                new MachineCache(new RotorRegistry()), settings, forward);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+
+            System.out.println("Listening on localhost:" + server.getPort() +
+                (forward == null ? ", echoing" : ", forwarding to " + forward));
+            server.loop.join();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            usage();
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}